@@ -0,0 +1,81 @@
+package bench;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import model.BooksDbInterface;
+import model.Review;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding a review to books that already hold a given number of reviews.
+ *
+ * Every call adds a review to a book of its own, so no book grows during a
+ * measurement. The books are seeded again before each iteration, and an
+ * iteration is one batch of calls timed together. It runs on the in-memory
+ * database only, since a server keeps the reviews of earlier runs.
+ *
+ * @author Umar A & Rabi S
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, batchSize = AddReviewBenchmark.BATCH_SIZE)
+@Measurement(iterations = 20, batchSize = AddReviewBenchmark.BATCH_SIZE)
+@Fork(1)
+@State(Scope.Thread)
+public class AddReviewBenchmark {
+
+    static final int BATCH_SIZE = 50;
+
+    @Param({"10", "1000", "10000"})
+    public int reviews;
+
+    private BooksDbInterface booksDb;
+    private List<Book> toReview;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        List<Book> books = BenchData.books(BATCH_SIZE);
+        for (int i = 0; i < books.size(); i++) {
+            BenchData.withReviews(books.get(i), reviews);
+        }
+        booksDb = BenchData.open("memory", books);
+
+        // the review dialog adds the new review to the book it was given
+        toReview = new ArrayList();
+        List<Book> seeded = booksDb.getTheBooks(null, BATCH_SIZE);
+        for (int i = 0; i < seeded.size(); i++) {
+            Book book = seeded.get(i);
+            book.addReview(new Review(4.0, "Benchmark review", LocalDate.now(), new User(BenchData.BENCH_USER)));
+            toReview.add(book);
+        }
+        next = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        booksDb.disconnect();
+    }
+
+    @Benchmark
+    public Book addReviewToDb() {
+        return booksDb.addReviewToDb(toReview.get(next++ % toReview.size()));
+    }
+}
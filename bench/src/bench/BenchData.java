@@ -0,0 +1,143 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import model.Author;
+import model.Book;
+import model.BooksDb;
+import model.BooksDbInterface;
+import model.Genre;
+import model.InMemoryBooksDb;
+import model.Review;
+import model.User;
+import org.bson.types.ObjectId;
+
+/**
+ * Generates the same catalogue on every run, so numbers from different runs
+ * can be compared, and opens the database the benchmarks run against.
+ *
+ * @author Umar A & Rabi S
+ */
+public final class BenchData {
+
+    public static final String BENCH_USER = "bench";
+
+    private static final long SEED = 20240101L;
+
+    private static final String[] WORDS = {
+        "the", "lord", "of", "rings", "shadow", "night", "river", "stone", "garden", "winter",
+        "secret", "house", "last", "city", "sea", "fire", "glass", "storm", "silent", "king",
+        "queen", "war", "peace", "light", "dark", "island", "road", "song", "heart", "mountain"
+    };
+    private static final String[] FIRST_NAMES = {
+        "John", "Mary", "Astrid", "Leo", "Karin", "Umar", "Rabi", "Selma", "Ursula", "Terry",
+        "Agatha", "Jules", "Virginia", "Isaac", "Frank", "Anne", "Henning", "Stieg", "Tove", "Jane"
+    };
+    private static final String[] LAST_NAMES = {
+        "Tolkien", "Lindgren", "Lagerlof", "Le Guin", "Pratchett", "Christie", "Verne", "Woolf",
+        "Asimov", "Herbert", "Bronte", "Mankell", "Larsson", "Jansson", "Austen", "Orwell"
+    };
+
+    private BenchData() {
+    }
+
+    /**
+     * @param nrOfBooks
+     * @return a {@code List<Book>} of books with one to three authors each,
+     * the same list for the same number of books
+     */
+    public static List<Book> books(int nrOfBooks) {
+        Random random = new Random(SEED);
+        User addedBy = new User(BENCH_USER);
+        Genre[] genres = Genre.values();
+
+        List<Book> books = new ArrayList(nrOfBooks);
+        for (int i = 0; i < nrOfBooks; i++) {
+            StringBuilder title = new StringBuilder();
+            int titleWords = 1 + random.nextInt(4);
+            for (int w = 0; w < titleWords; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                title.append(w + 1 < titleWords ? " " : "");
+            }
+            String isbn = String.format("978%010d", i);
+            LocalDate published = LocalDate.of(1900 + random.nextInt(120), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            double rating = random.nextInt(5) == 0 ? 0.0 : 1 + random.nextInt(41) / 10.0;
+
+            Book book = new Book(new ObjectId(), title.toString(), isbn, published, genres[random.nextInt(genres.length)], rating, addedBy);
+            int nrOfAuthors = 1 + random.nextInt(3);
+            for (int a = 0; a < nrOfAuthors; a++) {
+                book.addAuthor(author(random, addedBy));
+            }
+            books.add(book);
+        }
+        return books;
+    }
+
+    /**
+     * @param book
+     * @param nrOfReviews
+     * @return the {@code Book} with reviews added by users other than the
+     * bench user
+     */
+    public static Book withReviews(Book book, int nrOfReviews) {
+        Random random = new Random(SEED + nrOfReviews);
+        LocalDate added = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < nrOfReviews; i++) {
+            book.addReview(new Review(1 + random.nextInt(5), "Review " + i + " of " + book.getTitle(), added, new User("reader" + i)));
+        }
+        return book;
+    }
+
+    /**
+     * Open the database to run a benchmark against: "memory" for an
+     * {@code InMemoryBooksDb} holding the books, or "mongo" for a
+     * {@code BooksDb} on the local server, which gets the books imported
+     * once by a bench user.
+     *
+     * @param backend
+     * @param books
+     * @return the {@code BooksDbInterface}, logged in as the bench user
+     * @throws IOException if the books cannot be written to an import feed
+     */
+    public static BooksDbInterface open(String backend, List<Book> books) throws IOException {
+        BooksDbInterface booksDb;
+        if ("mongo".equals(backend)) {
+            booksDb = new BooksDb();
+            booksDb.loginAsGuest();
+        } else {
+            booksDb = new InMemoryBooksDb();
+        }
+
+        User benchUser = new User(BENCH_USER, BENCH_USER);
+        if (booksDb.isUsernameAvailable(benchUser)) {
+            booksDb.createAccToDb(benchUser);
+        }
+        booksDb.loginAsUser(benchUser);
+
+        if (booksDb instanceof InMemoryBooksDb) {
+            ((InMemoryBooksDb) booksDb).addBooks(books);
+        } else {
+            // books already imported by an earlier run are skipped by isbn
+            InMemoryBooksDb feedSource = new InMemoryBooksDb();
+            feedSource.addBooks(books);
+            File feed = File.createTempFile("bench-books", ".ndjson");
+            try {
+                feedSource.exportBooks(feed);
+                booksDb.importBooks(feed);
+            } finally {
+                feed.delete();
+            }
+        }
+        return booksDb;
+    }
+
+    private static Author author(Random random, User addedBy) {
+        String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        return new Author(name, LocalDate.of(1850 + random.nextInt(120), 1 + random.nextInt(12), 1 + random.nextInt(28)), addedBy);
+    }
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import view.BookCells;
+
+/**
+ * The text of the computed book table cells, for a page of books as the
+ * table shows it.
+ *
+ * @author Umar A & Rabi S
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CellValueBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private List<Book> page;
+
+    @Setup
+    public void setUp() {
+        page = BenchData.books(PAGE_SIZE);
+    }
+
+    @Benchmark
+    public void ratingText(Blackhole blackhole) {
+        for (int i = 0; i < page.size(); i++) {
+            blackhole.consume(BookCells.ratingText(page.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void nrOfReviewsText(Blackhole blackhole) {
+        for (int i = 0; i < page.size(); i++) {
+            blackhole.consume(BookCells.nrOfReviewsText(page.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void addedByText(Blackhole blackhole) {
+        for (int i = 0; i < page.size(); i++) {
+            blackhole.consume(BookCells.addedByText(page.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void authorNamesText(Blackhole blackhole) {
+        for (int i = 0; i < page.size(); i++) {
+            blackhole.consume(BookCells.authorNamesText(page.get(i)));
+        }
+    }
+
+    @Benchmark
+    public void authorBirthDatesText(Blackhole blackhole) {
+        for (int i = 0; i < page.size(); i++) {
+            blackhole.consume(BookCells.authorBirthDatesText(page.get(i)));
+        }
+    }
+}
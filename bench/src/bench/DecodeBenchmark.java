@@ -0,0 +1,58 @@
+package bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import model.BookCodec;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of a book document, as read from the wire, to a {@code Book} by
+ * the {@code BookCodec}.
+ *
+ * @author Umar A & Rabi S
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    @Param({"0", "10", "1000"})
+    public int reviews;
+
+    private final BookCodec codec = new BookCodec();
+    private byte[] document;
+
+    @Setup
+    public void setUp() {
+        Book book = BenchData.withReviews(BenchData.books(1).get(0), reviews);
+
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), book, EncoderContext.builder().build());
+        document = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Book decode() {
+        BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(document));
+        return codec.decode(reader, DecoderContext.builder().build());
+    }
+}
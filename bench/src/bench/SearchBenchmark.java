@@ -0,0 +1,84 @@
+package bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import model.Book;
+import model.BooksDbInterface;
+import model.Genre;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Each search method of {@code BooksDbInterface} on the generated catalogue.
+ * Run with {@code -p backend=mongo} to search a local MongoDB server instead
+ * of the in-memory database.
+ *
+ * @author Umar A & Rabi S
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"memory"})
+    public String backend;
+
+    @Param({"10000"})
+    public int books;
+
+    private BooksDbInterface booksDb;
+
+    @Setup
+    public void setUp() throws IOException {
+        booksDb = BenchData.open(backend, BenchData.books(books));
+    }
+
+    @TearDown
+    public void tearDown() {
+        booksDb.disconnect();
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByTitle() {
+        return booksDb.searchBooksByTitle("shadow of");
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByISBN() {
+        return booksDb.searchBooksByISBN("978000000123");
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByAuthor() {
+        return booksDb.searchBooksByAuthor("tolk");
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByKeywords() {
+        return booksDb.searchBooksByKeywords("winter garden");
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByRating() {
+        return booksDb.searchBooksByRating(4.0, 4.5);
+    }
+
+    @Benchmark
+    public List<Book> searchBooksByGenre() {
+        return booksDb.searchBooksByGenre(Genre.Fantasy.name());
+    }
+}
@@ -1,7 +1,14 @@
 package labb2mongodb;
 
 import model.BooksDb;
+import model.BooksDbInterface;
+import model.CachedBooksDb;
+import model.InMemoryBooksDb;
+import model.MeteredBooksDb;
+import model.ReviewStorage;
+import model.SlowCommandLog;
 import view.DbView;
+import java.io.File;
 import javafx.application.Application;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -13,11 +20,33 @@ import javafx.stage.Stage;
  */
 public class App extends Application {
 
+    private static final String METRICS_FILE = "booksdb-metrics.txt";
+    private static final long METRICS_DUMP_SECONDS = 60;
+
     @Override
     public void start(Stage primaryStage) {
 
-        BooksDb booksDb = new BooksDb();
-        
+        // --reviews=bucketed keeps the reviews in the reviews collection,
+        // after the existing reviews have been moved there by MigrateReviews
+        String reviews = getParameters().getNamed().get("reviews");
+        ReviewStorage reviewStorage = "bucketed".equalsIgnoreCase(reviews) ? ReviewStorage.BUCKETED : ReviewStorage.EMBEDDED;
+
+        // --db=memory runs the client on an empty catalogue in memory,
+        // without a MongoDB server
+        String db = getParameters().getNamed().get("db");
+        // --slowms=<millis> is the threshold of the slow command log,
+        // booksdb-slow.0.log, 100 ms by default
+        String slowMillis = getParameters().getNamed().get("slowms");
+        long slowThreshold = slowMillis == null ? SlowCommandLog.DEFAULT_THRESHOLD_MILLIS : Long.parseLong(slowMillis);
+
+        BooksDbInterface client = "memory".equalsIgnoreCase(db) ? new InMemoryBooksDb()
+                : new CachedBooksDb(new BooksDb(reviewStorage, new SlowCommandLog(slowThreshold, SlowCommandLog.DEFAULT_LOG_PATTERN)));
+
+        // the latencies of every call are shown over JMX and written to
+        // --metrics=<file> every minute, booksdb-metrics.txt by default
+        String metrics = getParameters().getNamed().getOrDefault("metrics", METRICS_FILE);
+        BooksDbInterface booksDb = new MeteredBooksDb(client, new File(metrics), METRICS_DUMP_SECONDS);
+
         DbView root = new DbView(booksDb);
 
         Scene scene = new Scene(root, 1182, 720);
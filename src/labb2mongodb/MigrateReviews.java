@@ -0,0 +1,24 @@
+package labb2mongodb;
+
+import model.BooksDb;
+import model.ReviewStorage;
+
+/**
+ * Moves the reviews embedded in the book documents to buckets in the reviews
+ * collection. Run it once, with no client adding reviews, before starting the
+ * application with --reviews=bucketed.
+ *
+ * @author Umar A & Rabi S
+ */
+public class MigrateReviews {
+
+    public static void main(String[] args) {
+        BooksDb booksDb = new BooksDb(ReviewStorage.BUCKETED);
+        try {
+            long migrated = booksDb.migrateReviewsToBuckets();
+            System.out.println("Moved the reviews of " + migrated + " books to the reviews collection");
+        } finally {
+            booksDb.disconnect();
+        }
+    }
+}
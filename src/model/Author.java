@@ -19,6 +19,12 @@ public class Author {
         this.user = user;
     }
     
+    public Author(String name, LocalDate dateOfBirth, User user) {
+        this.name = name;
+        this.dateOfBirth = dateOfBirth;
+        this.user = user;
+    }
+
     public Author(String name, String dateOfBirth) {
         this.name = name;
         this.dateOfBirth = LocalDate.parse(dateOfBirth);
@@ -0,0 +1,106 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Bloom filter of strings. It answers whether a string might have been
+ * added: a "no" is certain, a "yes" is wrong for about the given share of
+ * the strings never added, as long as no more strings than expected are
+ * added. Strings cannot be removed, a removed string only costs a needless
+ * lookup until the filter is built again.
+ *
+ * Adding and checking can be done from any thread without locking.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BloomFilter {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final AtomicLongArray bits;
+    private final long nrOfBits;
+    private final int nrOfHashes;
+
+    /**
+     * Create an empty filter sized for the number of strings and the share
+     * of false positives.
+     *
+     * @param expectedInsertions
+     * @param falsePositiveRate for example 0.01
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        int expected = Math.max(expectedInsertions, 1);
+        long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min((Math.max(optimalBits, 64) + 63) / 64, Integer.MAX_VALUE);
+
+        this.bits = new AtomicLongArray(words);
+        this.nrOfBits = (long) words * 64;
+        this.nrOfHashes = Math.max(1, (int) Math.round((double) nrOfBits / expected * Math.log(2)));
+    }
+
+    public void put(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= nrOfHashes; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = bits.get(word);
+            while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+                old = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * Check if a string might have been added.
+     *
+     * @param value
+     * @return false if the string was certainly never added
+     */
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= nrOfHashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getBitSize() {
+        return nrOfBits;
+    }
+
+    public int getHashCount() {
+        return nrOfHashes;
+    }
+
+    private long index(int combined) {
+        // a negative combination is flipped, as in Guava's filter
+        return (combined < 0 ? ~combined : combined) % nrOfBits;
+    }
+
+    // FNV-1a over the UTF-8 bytes, with the result mixed so both halves of
+    // the 64 bits can be used as independent hashes
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < bytes.length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
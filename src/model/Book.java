@@ -19,6 +19,7 @@ public class Book {
     private final Genre genre;
     private double rating;
     private final User user;
+    private int nrOfReviews;
 
     private final ArrayList<Author> theAuthors;
     private final ArrayList<Review> theReviews;
@@ -36,6 +37,19 @@ public class Book {
         this.theReviews = new ArrayList();
     }
 
+    public Book(ObjectId _bId, String title, String isbn, LocalDate published, Genre genre, double rating, User user) {
+        this._bId = _bId;
+        this.title = title;
+        this.isbn = isbn;
+        this.rating = rating;
+        this.published = published;
+        this.genre = genre;
+        this.user = user;
+
+        this.theAuthors = new ArrayList();
+        this.theReviews = new ArrayList();
+    }
+
     public Book(String title, String isbn, String published, String genre) {
         this._bId = null;
         this.title = title;
@@ -112,6 +126,16 @@ public class Book {
         return this.user;
     }
 
+    /**
+     * Get the number of reviews of the book. This is also set for books that
+     * were loaded without their reviews.
+     *
+     * @return an {@code int} of the books number of reviews
+     */
+    public int getNrOfReviews() {
+        return this.nrOfReviews;
+    }
+
     /**
      * Get the author with the specified index
      *
@@ -170,8 +194,13 @@ public class Book {
      */
     public void addReview(Review review) {
         this.theReviews.add(review);
+        this.nrOfReviews++;
     }
-    
+
+    public void setNrOfReviews(int nrOfReviews) {
+        this.nrOfReviews = nrOfReviews;
+    }
+
     public void setRating(double rating) {
         this.rating = rating;
     }
@@ -0,0 +1,191 @@
+package model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
+
+/**
+ * A least recently used cache of books, and optionally their reviews, keyed
+ * by the ObjectId of the book. The cache is bounded by an estimate of the
+ * memory its entries use rather than by the number of entries, since a book
+ * with its reviews can be many times the size of a summary book.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookCache implements BookCacheMXBean {
+
+    private final LinkedHashMap<ObjectId, Entry> entries;
+    private final long maxBytes;
+    private long usedBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public BookCache(long maxBytes) {
+        this.entries = new LinkedHashMap(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Get a cached book and mark it as recently used.
+     *
+     * @param bookId
+     * @return the cached {@code Book}, or null if it is not cached
+     */
+    public synchronized Book getBook(ObjectId bookId) {
+        Entry entry = entries.get(bookId);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.book;
+    }
+
+    /**
+     * Get the cached reviews of a book and mark the book as recently used.
+     *
+     * @param bookId
+     * @return the cached {@code List<Review>}, or null if they are not cached
+     */
+    public synchronized List<Review> getReviews(ObjectId bookId) {
+        Entry entry = entries.get(bookId);
+        if (entry == null || entry.reviews == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.reviews;
+    }
+
+    /**
+     * Check if a book is cached, without marking it as used or counting a hit
+     * or a miss.
+     *
+     * @param bookId
+     * @return a {@code boolean} if the book is cached
+     */
+    public synchronized boolean contains(ObjectId bookId) {
+        return entries.containsKey(bookId);
+    }
+
+    /**
+     * Cache a book, replacing the cached book with the same id. Cached reviews
+     * of the book are kept.
+     *
+     * @param book
+     */
+    public synchronized void putBook(Book book) {
+        Entry entry = entries.get(book.getBId());
+        List<Review> reviews = entry == null ? null : entry.reviews;
+        put(new Entry(book, reviews));
+    }
+
+    /**
+     * Cache the reviews of a cached book. Nothing is cached if the book is not.
+     *
+     * @param bookId
+     * @param reviews
+     */
+    public synchronized void putReviews(ObjectId bookId, List<Review> reviews) {
+        Entry entry = entries.get(bookId);
+        if (entry != null) {
+            put(new Entry(entry.book, reviews));
+        }
+    }
+
+    /**
+     * Remove a book and its reviews from the cache.
+     *
+     * @param bookId
+     */
+    public synchronized void invalidate(ObjectId bookId) {
+        Entry removed = entries.remove(bookId);
+        if (removed != null) {
+            usedBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Remove every book from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void put(Entry entry) {
+        invalidate(entry.book.getBId());
+        entries.put(entry.book.getBId(), entry);
+        usedBytes += entry.bytes;
+
+        Iterator<Map.Entry<ObjectId, Entry>> eldest = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && eldest.hasNext()) {
+            usedBytes -= eldest.next().getValue().bytes;
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    private static class Entry {
+
+        private final Book book;
+        private final List<Review> reviews;
+        private final long bytes;
+
+        private Entry(Book book, List<Review> reviews) {
+            this.book = book;
+            this.reviews = reviews;
+            this.bytes = estimateBytes(book, reviews);
+        }
+    }
+
+    /**
+     * A rough estimate of the heap used by a book: a fixed cost per object
+     * plus two bytes per character of its strings.
+     */
+    private static long estimateBytes(Book book, List<Review> reviews) {
+        long bytes = 160 + 2 * (length(book.getTitle()) + length(book.getIsbn()));
+        for (int i = 0; i < book.getAuthors().size(); i++) {
+            bytes += 120 + 2 * length(book.getAuthors().get(i).getName());
+        }
+        if (reviews != null) {
+            for (int i = 0; i < reviews.size(); i++) {
+                bytes += 120 + 2 * length(reviews.get(i).getRevString());
+            }
+        }
+        return bytes;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+}
@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * The counters of the book cache of a {@code CachedBooksDb} as shown over
+ * JMX. They count since the start of the client.
+ *
+ * @author Umar A & Rabi S
+ */
+public interface BookCacheMXBean {
+
+    public long getHitCount();
+
+    public long getMissCount();
+
+    public long getEvictionCount();
+
+    /**
+     * Get the estimated memory used by the cached books.
+     *
+     * @return the used bytes
+     */
+    public long getUsedBytes();
+}
@@ -0,0 +1,33 @@
+package model;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Receives the changes made to the books in the database, by this or any
+ * other client.
+ *
+ * @author Umar A & Rabi S
+ */
+public interface BookChangeListener {
+
+    /**
+     * Called when a book was added or changed.
+     *
+     * @param book the book as it is now, without its reviews
+     */
+    public void bookChanged(Book book);
+
+    /**
+     * Called when a book was deleted.
+     *
+     * @param bookId the id of the deleted book
+     */
+    public void bookRemoved(ObjectId bookId);
+
+    /**
+     * Called when changes may have been missed, because the server no longer
+     * had them when the stream was reopened. Every book read before may be
+     * stale, so they should all be read again.
+     */
+    public void booksResynced();
+}
@@ -0,0 +1,174 @@
+package model;
+
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import static com.mongodb.client.model.Aggregates.match;
+import static com.mongodb.client.model.Aggregates.project;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.exclude;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.conversions.Bson;
+
+/**
+ * Follows the change stream of the books collection on a background thread
+ * and passes every added, changed and deleted book to a listener.
+ *
+ * The resume token of the last change is kept, so when the stream is lost,
+ * for example when the connection drops or the primary steps down, it is
+ * reopened where it left off and no change is missed. The token can be passed
+ * on to the next watcher, so a new login resumes where the last one stopped.
+ * If the server no longer has the changes after the token, the stream is
+ * reopened at the current time and the listener is told to read every book
+ * again. Only a server without a replica set, which has no change stream,
+ * stops the watcher.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookChangeWatcher {
+
+    // the server has no longer got the changes after the resume token
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private static final int CHANGE_STREAM_FATAL_ERROR = 280;
+    // change streams need a replica set
+    private static final int REPLICA_SET_REQUIRED = 40573;
+    private static final long RETRY_MILLIS = 2000;
+    private static final long MAX_RETRY_MILLIS = 60000;
+
+    private final MongoCollection<Book> bookCollection;
+    private final BookChangeListener listener;
+    private final List<Bson> pipeline;
+
+    private volatile boolean running;
+    private volatile MongoCursor<ChangeStreamDocument<Book>> cursor;
+    private volatile BsonDocument resumeToken;
+    private boolean isResyncNeeded;
+    private long retryMillis;
+
+    /**
+     * @param bookCollection
+     * @param listener
+     * @param resumeToken the token of the last change seen by an earlier
+     * watcher, or null to start at the current time
+     */
+    public BookChangeWatcher(MongoCollection<Book> bookCollection, BookChangeListener listener, BsonDocument resumeToken) {
+        this.bookCollection = bookCollection;
+        this.listener = listener;
+        this.resumeToken = resumeToken;
+        this.retryMillis = RETRY_MILLIS;
+        this.pipeline = Arrays.asList(
+                match(in("operationType", Arrays.asList("insert", "update", "replace", "delete"))),
+                project(exclude("fullDocument.reviews", "fullDocument.titleKeys", "fullDocument.authorKeys")));
+    }
+
+    /**
+     * Start following the changes on a daemon thread.
+     */
+    public void start() {
+        running = true;
+        Thread thread = new Thread(() -> watch(), "books-change-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the resume token of the last change passed to the listener.
+     *
+     * @return a {@code BsonDocument}, or null if no change has been seen
+     */
+    public BsonDocument getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * Stop following the changes.
+     */
+    public void stop() {
+        running = false;
+        MongoCursor<ChangeStreamDocument<Book>> current = cursor;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (MongoException e) {
+                // the stream is being abandoned anyway
+            }
+        }
+    }
+
+    private void watch() {
+        while (running) {
+            try {
+                ChangeStreamIterable<Book> changes = bookCollection.watch(pipeline).fullDocument(FullDocument.UPDATE_LOOKUP);
+                if (resumeToken != null) {
+                    changes = changes.resumeAfter(resumeToken);
+                }
+
+                cursor = changes.iterator();
+                retryMillis = RETRY_MILLIS;
+                if (isResyncNeeded) {
+                    // told once the new stream is open, so the books read
+                    // again are not older than its first change
+                    isResyncNeeded = false;
+                    listener.booksResynced();
+                }
+                while (running && cursor.hasNext()) {
+                    ChangeStreamDocument<Book> change = cursor.next();
+                    dispatch(change);
+                    resumeToken = change.getResumeToken();
+                }
+            } catch (MongoServerException e) {
+                if (e.getCode() == CHANGE_STREAM_HISTORY_LOST || e.getCode() == CHANGE_STREAM_FATAL_ERROR) {
+                    resumeToken = null;
+                    isResyncNeeded = true;
+                } else if (e.getCode() == REPLICA_SET_REQUIRED) {
+                    // there is nothing to follow on a standalone server
+                    running = false;
+                } else if (running) {
+                    pause();
+                }
+            } catch (MongoException e) {
+                if (running) {
+                    pause();
+                }
+            } finally {
+                cursor = null;
+            }
+        }
+    }
+
+    private void dispatch(ChangeStreamDocument<Book> change) {
+        switch (change.getOperationType()) {
+            case INSERT:
+            case UPDATE:
+            case REPLACE:
+                // null when the book was deleted before it could be looked up
+                if (change.getFullDocument() != null) {
+                    listener.bookChanged(change.getFullDocument());
+                }
+                break;
+            case DELETE:
+                listener.bookRemoved(change.getDocumentKey().getObjectId("_id").getValue());
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Wait before reopening the stream, twice as long after each failure in
+     * a row.
+     */
+    private void pause() {
+        try {
+            Thread.sleep(retryMillis);
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+}
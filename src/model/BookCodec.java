@@ -0,0 +1,276 @@
+package model;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+/**
+ * Maps book documents straight between the BSON stream and {@code Book},
+ * {@code Author} and {@code Review} objects. Dates are read as epoch millis
+ * and ratings as doubles, so no intermediate {@code Document} or string
+ * formatting is involved.
+ *
+ * A document read without its {@code reviews} array keeps the stored
+ * {@code reviewCount}, so summary books still know how many reviews they
+ * have. When the reviews are kept in buckets the codec does not write the
+ * {@code reviews} array at all.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookCodec implements Codec<Book> {
+
+    private final boolean embedsReviews;
+
+    public BookCodec() {
+        this(true);
+    }
+
+    public BookCodec(boolean embedsReviews) {
+        this.embedsReviews = embedsReviews;
+    }
+
+    @Override
+    public Book decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId _id = null;
+        String title = null;
+        String isbn = null;
+        LocalDate published = null;
+        Genre genre = null;
+        double rating = 0.0;
+        int reviewCount = -1;
+        String username = null;
+        List<Author> authors = new ArrayList();
+        List<Review> reviews = new ArrayList();
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String field = reader.readName();
+            if (reader.getCurrentBsonType() == BsonType.NULL) {
+                reader.readNull();
+                continue;
+            }
+            switch (field) {
+                case "_id":
+                    _id = reader.readObjectId();
+                    break;
+                case "title":
+                    title = reader.readString();
+                    break;
+                case "isbn":
+                    isbn = reader.readString();
+                    break;
+                case "published":
+                    published = readDate(reader);
+                    break;
+                case "genre":
+                    genre = Genre.valueOf(reader.readString());
+                    break;
+                case "rating":
+                    rating = roundRating(readNumber(reader));
+                    break;
+                case "reviewCount":
+                    reviewCount = (int) readNumber(reader);
+                    break;
+                case "username":
+                    username = reader.readString();
+                    break;
+                case "authors":
+                    readAuthors(reader, authors);
+                    break;
+                case "reviews":
+                    readReviews(reader, reviews);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        Book book = new Book(_id, title, isbn, published, genre, rating, new User(username));
+        book.addAuthors(authors);
+        for (int i = 0; i < reviews.size(); i++) {
+            book.addReview(reviews.get(i));
+        }
+        if (reviewCount >= 0) {
+            book.setNrOfReviews(reviewCount);
+        }
+        return book;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Book book, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        if (book.getBId() != null) {
+            writer.writeObjectId("_id", book.getBId());
+        }
+        writer.writeString("title", book.getTitle());
+        writer.writeString("isbn", book.getIsbn());
+        writer.writeDateTime("published", toMillis(book.getPublished()));
+        writer.writeString("genre", book.getGenre().name());
+        writer.writeDouble("rating", book.getRating());
+        writer.writeInt32("reviewCount", book.getNrOfReviews());
+        writer.writeDouble("ratingSum", book.getRating() * book.getNrOfReviews());
+        writeUsername(writer, "username", book.getUser());
+
+        writer.writeStartArray("authors");
+        for (int i = 0; i < book.getAuthors().size(); i++) {
+            Author author = book.getAuthors().get(i);
+            writer.writeStartDocument();
+            writer.writeString("name", author.getName());
+            writer.writeDateTime("birthDate", toMillis(author.getDateOfBirth()));
+            writeUsername(writer, "addedByUser", author.getUser());
+            writer.writeEndDocument();
+        }
+        writer.writeEndArray();
+
+        writeKeys(writer, "titleKeys", SearchKeys.keysOf(book.getTitle()));
+        writeKeys(writer, "authorKeys", SearchKeys.keysOfAuthors(book.getAuthors()));
+
+        if (embedsReviews) {
+            writer.writeStartArray("reviews");
+            for (int i = 0; i < book.getReviews().size(); i++) {
+                Review review = book.getReviews().get(i);
+                writer.writeStartDocument();
+                writer.writeDouble("rating", review.getbRating());
+                writer.writeString("text", review.getRevString());
+                writer.writeDateTime("dateAdded", toMillis(review.getDateAdded()));
+                writeUsername(writer, "addedByUser", review.getUser());
+                writer.writeEndDocument();
+            }
+            writer.writeEndArray();
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<Book> getEncoderClass() {
+        return Book.class;
+    }
+
+    private void readAuthors(BsonReader reader, List<Author> authors) {
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = null;
+            LocalDate birthDate = null;
+            String addedByUser = null;
+
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String field = reader.readName();
+                if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    continue;
+                }
+                switch (field) {
+                    case "name":
+                        name = reader.readString();
+                        break;
+                    case "birthDate":
+                        birthDate = readDate(reader);
+                        break;
+                    case "addedByUser":
+                        addedByUser = reader.readString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+
+            authors.add(new Author(name, birthDate, new User(addedByUser)));
+        }
+        reader.readEndArray();
+    }
+
+    private void readReviews(BsonReader reader, List<Review> reviews) {
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            double rating = 0.0;
+            String text = null;
+            LocalDate dateAdded = null;
+            String addedByUser = null;
+
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String field = reader.readName();
+                if (reader.getCurrentBsonType() == BsonType.NULL) {
+                    reader.readNull();
+                    continue;
+                }
+                switch (field) {
+                    case "rating":
+                        rating = readNumber(reader);
+                        break;
+                    case "text":
+                        text = reader.readString();
+                        break;
+                    case "dateAdded":
+                        dateAdded = readDate(reader);
+                        break;
+                    case "addedByUser":
+                        addedByUser = reader.readString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+
+            reviews.add(new Review(rating, text, dateAdded, new User(addedByUser)));
+        }
+        reader.readEndArray();
+    }
+
+    private double readNumber(BsonReader reader) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DECIMAL128:
+                return reader.readDecimal128().doubleValue();
+            default:
+                return reader.readDouble();
+        }
+    }
+
+    private LocalDate readDate(BsonReader reader) {
+        return Instant.ofEpochMilli(reader.readDateTime()).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private long toMillis(LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private void writeKeys(BsonWriter writer, String field, List<String> keys) {
+        writer.writeStartArray(field);
+        for (int i = 0; i < keys.size(); i++) {
+            writer.writeString(keys.get(i));
+        }
+        writer.writeEndArray();
+    }
+
+    private void writeUsername(BsonWriter writer, String field, User user) {
+        if (user == null || user.getUsername() == null) {
+            writer.writeNull(field);
+        } else {
+            writer.writeString(field, user.getUsername());
+        }
+    }
+
+    /**
+     * Rounds a rating to one decimal, the precision shown in the view.
+     */
+    static double roundRating(double rating) {
+        return Math.round(rating * 10.0) / 10.0;
+    }
+}
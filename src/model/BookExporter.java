@@ -0,0 +1,264 @@
+package model;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import static com.mongodb.client.model.Projections.exclude;
+import static com.mongodb.client.model.Sorts.ascending;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriter;
+import org.bson.json.JsonWriterSettings;
+
+/**
+ * Writes every book in the books collection to a feed file in the format
+ * {@code BookFeedReader} reads, so an export can be imported again.
+ *
+ * The books are streamed from a cursor one batch at a time and written
+ * through a buffered file channel, so the memory used does not grow with the
+ * size of the catalogue. A file name ending in ".gz" is gzipped. The feed is
+ * written to a temporary file that replaces the target when it is complete,
+ * so a failed export never leaves half a feed behind.
+ *
+ * When reviews are kept in buckets, the buckets are read from a second
+ * cursor in book id order alongside the books, so each book meets its
+ * reviews without a query per book.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MongoCollection<Book> bookCollection;
+    private final ReviewBuckets reviewBuckets;
+    private final int batchSize;
+
+    /**
+     * @param bookCollection
+     * @param reviewBuckets the buckets to read the reviews from, or null if
+     * the reviews are embedded in the books
+     * @param batchSize
+     */
+    public BookExporter(MongoCollection<Book> bookCollection, ReviewBuckets reviewBuckets, int batchSize) {
+        this.bookCollection = bookCollection;
+        this.reviewBuckets = reviewBuckets;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Export the books to an NDJSON or CSV file, chosen by the extension of
+     * its name the same way as for an import.
+     *
+     * @param target
+     * @return an {@code ExportReport} with the number of books and bytes
+     * written
+     * @throws IOException if the file cannot be written
+     */
+    public ExportReport exportFeed(Path target) throws IOException {
+        BookFeedReader.Format format = BookFeedReader.formatOf(target.getFileName().toString());
+
+        try (MongoCursor<Book> cursor = bookCollection.find()
+                .projection(exclude("titleKeys", "authorKeys"))
+                .sort(ascending("_id"))
+                .batchSize(batchSize)
+                .iterator();
+                MongoCursor<Document> buckets = openBuckets(format)) {
+
+            return writeFeed(target, buckets == null ? cursor : new BucketJoin(cursor, buckets));
+        }
+    }
+
+    /**
+     * Write books, with the reviews they carry, to an NDJSON or CSV file the
+     * same way as an export of the database.
+     *
+     * @param target
+     * @param books the books to write, in the order they are written
+     * @return an {@code ExportReport} with the number of books and bytes
+     * written
+     * @throws IOException if the file cannot be written
+     */
+    public static ExportReport writeFeed(Path target, Iterator<Book> books) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String fileName = target.getFileName().toString();
+        BookFeedReader.Format format = BookFeedReader.formatOf(fileName);
+        Path temp = target.resolveSibling(fileName + ".tmp");
+
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                Writer writer = openWriter(channel, fileName)) {
+
+            if (format == BookFeedReader.Format.CSV) {
+                writer.write("title,isbn,published,genre,authors\n");
+            }
+            while (books.hasNext()) {
+                Book book = books.next();
+                if (format == BookFeedReader.Format.CSV) {
+                    writeCsv(writer, book);
+                } else {
+                    writeJson(writer, book, book.getReviews());
+                }
+                written++;
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new ExportReport(written, Files.size(target), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Open a cursor over the buckets in the order of the books, or return
+     * null when there are no bucketed reviews to export.
+     */
+    private MongoCursor<Document> openBuckets(BookFeedReader.Format format) {
+        if (reviewBuckets == null || format == BookFeedReader.Format.CSV) {
+            return null;
+        }
+        return reviewBuckets.getCollection().find().sort(ascending("bookId", "seq")).batchSize(batchSize).iterator();
+    }
+
+    /**
+     * Gives each book of a cursor in id order the reviews of its buckets,
+     * read from a bucket cursor in the same order.
+     */
+    private static class BucketJoin implements Iterator<Book> {
+
+        private final MongoCursor<Book> books;
+        private final MongoCursor<Document> buckets;
+        private Document bucket;
+
+        BucketJoin(MongoCursor<Book> books, MongoCursor<Document> buckets) {
+            this.books = books;
+            this.buckets = buckets;
+            this.bucket = buckets.hasNext() ? buckets.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return books.hasNext();
+        }
+
+        @Override
+        public Book next() {
+            Book book = books.next();
+
+            // buckets of deleted books sort before the next book
+            while (bucket != null && bucket.getObjectId("bookId").compareTo(book.getBId()) < 0) {
+                bucket = buckets.hasNext() ? buckets.next() : null;
+            }
+            int nrOfReviews = book.getNrOfReviews();
+            while (bucket != null && bucket.getObjectId("bookId").equals(book.getBId())) {
+                List<Review> reviews = ReviewBuckets.reviewsOf(bucket);
+                for (int i = 0; i < reviews.size(); i++) {
+                    book.addReview(reviews.get(i));
+                }
+                bucket = buckets.hasNext() ? buckets.next() : null;
+            }
+            book.setNrOfReviews(nrOfReviews);
+            return book;
+        }
+    }
+
+    private static Writer openWriter(FileChannel channel, String fileName) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        if (fileName.toLowerCase().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private static void writeJson(Writer writer, Book book, List<Review> reviews) throws IOException {
+        JsonWriter json = new JsonWriter(writer, JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build());
+        json.writeStartDocument();
+        json.writeString("title", book.getTitle());
+        json.writeString("isbn", book.getIsbn());
+        json.writeString("published", book.getPublished().toString());
+        json.writeString("genre", book.getGenre().name());
+
+        json.writeStartArray("authors");
+        List<Author> authors = book.getAuthors();
+        for (int i = 0; i < authors.size(); i++) {
+            json.writeStartDocument();
+            json.writeString("name", authors.get(i).getName());
+            json.writeString("dateOfBirth", authors.get(i).getDateOfBirth().toString());
+            json.writeEndDocument();
+        }
+        json.writeEndArray();
+
+        json.writeStartArray("reviews");
+        for (int i = 0; i < reviews.size(); i++) {
+            Review review = reviews.get(i);
+            json.writeStartDocument();
+            json.writeDouble("rating", review.getbRating());
+            json.writeString("text", review.getRevString() == null ? "" : review.getRevString());
+            if (review.getDateAdded() != null) {
+                json.writeString("dateAdded", review.getDateAdded().toString());
+            }
+            writeUsername(json, "username", review.getUser());
+            json.writeEndDocument();
+        }
+        json.writeEndArray();
+
+        json.writeEndDocument();
+        writer.write('\n');
+    }
+
+    // a review whose user was removed is decoded with a null username
+    private static void writeUsername(JsonWriter json, String field, User user) {
+        if (user == null || user.getUsername() == null) {
+            json.writeNull(field);
+        } else {
+            json.writeString(field, user.getUsername());
+        }
+    }
+
+    private static void writeCsv(Writer writer, Book book) throws IOException {
+        StringBuilder authors = new StringBuilder();
+        for (int i = 0; i < book.getAuthors().size(); i++) {
+            Author author = book.getAuthors().get(i);
+            if (i > 0) {
+                authors.append(';');
+            }
+            authors.append(author.getName()).append(':').append(author.getDateOfBirth());
+        }
+
+        writer.write(csvField(book.getTitle()));
+        writer.write(',');
+        writer.write(csvField(book.getIsbn()));
+        writer.write(',');
+        writer.write(book.getPublished().toString());
+        writer.write(',');
+        writer.write(book.getGenre().name());
+        writer.write(',');
+        writer.write(csvField(authors.toString()));
+        writer.write('\n');
+    }
+
+    /**
+     * Quote a field that holds a comma, a double quote or a line break.
+     */
+    private static String csvField(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
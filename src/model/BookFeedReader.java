@@ -0,0 +1,308 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Reads a publisher feed one line at a time and validates every row into a
+ * {@code Book} with its authors and reviews, without holding more than one
+ * line in memory.
+ *
+ * A feed is either NDJSON, one book document per line:
+ * <pre>
+ * {"title": "...", "isbn": "978...", "published": "2001-12-31", "genre": "Fantasy",
+ *  "authors": [{"name": "...", "dateOfBirth": "1950-01-01"}],
+ *  "reviews": [{"rating": 4.5, "text": "...", "dateAdded": "2020-01-01", "username": "..."}]}
+ * </pre>
+ * or CSV with a header line naming the columns title, isbn, published, genre
+ * and authors, where the authors are written as
+ * {@code name:dateOfBirth;name:dateOfBirth}. CSV feeds have no reviews.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookFeedReader {
+
+    public enum Format {
+        NDJSON, CSV
+    }
+
+    /**
+     * A line of the feed, holding either the book it was read into or the
+     * reason it was rejected.
+     */
+    public static class Row {
+
+        private final long lineNr;
+        private final Book book;
+        private final String error;
+
+        private Row(long lineNr, Book book, String error) {
+            this.lineNr = lineNr;
+            this.book = book;
+            this.error = error;
+        }
+
+        public long getLineNr() {
+            return lineNr;
+        }
+
+        /**
+         * @return the {@code Book} of the row, or null if it was rejected
+         */
+        public Book getBook() {
+            return book;
+        }
+
+        /**
+         * @return a {@code String} with the reason the row was rejected, or
+         * null if it was not
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static final String[] CSV_COLUMNS = {"title", "isbn", "published", "genre", "authors"};
+
+    private final BufferedReader reader;
+    private final Format format;
+    private final User addedBy;
+    private final Map<String, Integer> csvColumns;
+    private long lineNr;
+
+    public BookFeedReader(BufferedReader reader, Format format, User addedBy) {
+        this.reader = reader;
+        this.format = format;
+        this.addedBy = addedBy;
+        this.csvColumns = new HashMap();
+        this.lineNr = 0;
+    }
+
+    /**
+     * Get the format of a feed from the extension of its file name, CSV for
+     * ".csv" and NDJSON for anything else. A ".gz" extension is not part of
+     * the format.
+     *
+     * @param fileName
+     * @return the {@code Format} of the feed
+     */
+    public static Format formatOf(String fileName) {
+        String name = fileName.toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".csv") ? Format.CSV : Format.NDJSON;
+    }
+
+    /**
+     * Skip lines that have already been imported. The CSV header is read
+     * first, so the line numbers are those of the file.
+     *
+     * @param lineCount the number of lines from the start of the file to skip
+     * @throws IOException
+     */
+    public void skipTo(long lineCount) throws IOException {
+        while (lineNr < lineCount && readLine() != null) {
+        }
+    }
+
+    /**
+     * Read the next row, skipping empty lines.
+     *
+     * @return the next {@code Row}, or null at the end of the feed
+     * @throws IOException if the feed cannot be read, or a CSV feed has no
+     * valid header
+     */
+    public Row next() throws IOException {
+        String line;
+        do {
+            line = readLine();
+            if (line == null) {
+                return null;
+            }
+        } while (line.trim().isEmpty());
+
+        try {
+            Book book = format == Format.CSV ? parseCsv(line) : parseJson(line);
+            return new Row(lineNr, book, null);
+        } catch (RuntimeException e) {
+            // any line that is not a book is rejected, such as [1,2] or a null author
+            return new Row(lineNr, null, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private String readLine() throws IOException {
+        if (format == Format.CSV && csvColumns.isEmpty()) {
+            readCsvHeader();
+        }
+        String line = reader.readLine();
+        if (line != null) {
+            lineNr++;
+        }
+        return line;
+    }
+
+    private void readCsvHeader() throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new IOException("The CSV feed is empty");
+        }
+        lineNr++;
+
+        List<String> names = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) {
+            csvColumns.put(names.get(i).trim().toLowerCase(), i);
+        }
+        for (String column : CSV_COLUMNS) {
+            if (!csvColumns.containsKey(column)) {
+                throw new IOException("The CSV header has no " + column + " column");
+            }
+        }
+    }
+
+    private Book parseJson(String line) {
+        Document doc = Document.parse(line);
+
+        Book book = newBook(doc.getString("title"), doc.getString("isbn"), doc.getString("published"), doc.getString("genre"));
+
+        List<Document> authors = doc.getList("authors", Document.class, new ArrayList());
+        for (int i = 0; i < authors.size(); i++) {
+            Document author = authors.get(i);
+            book.addAuthor(newAuthor(author.getString("name"), author.getString("dateOfBirth")));
+        }
+
+        List<Document> reviews = doc.getList("reviews", Document.class, new ArrayList());
+        double ratingSum = 0.0;
+        for (int i = 0; i < reviews.size(); i++) {
+            Document review = reviews.get(i);
+            Object rating = review.get("rating");
+            if (!(rating instanceof Number)) {
+                throw new IllegalArgumentException("Review " + (i + 1) + " has no rating");
+            }
+            Review added = newReview(((Number) rating).doubleValue(), review.getString("text"), review.getString("dateAdded"), review.getString("username"));
+            book.addReview(added);
+            ratingSum += added.getbRating();
+        }
+        if (!reviews.isEmpty()) {
+            book.setRating(ratingSum / reviews.size());
+        }
+
+        return checkAuthors(book);
+    }
+
+    private Book parseCsv(String line) {
+        List<String> fields = splitCsv(line);
+
+        Book book = newBook(csvField(fields, "title"), csvField(fields, "isbn"), csvField(fields, "published"), csvField(fields, "genre"));
+
+        String authors = csvField(fields, "authors");
+        if (authors != null) {
+            for (String author : authors.split(";")) {
+                int colon = author.lastIndexOf(':');
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Author \"" + author + "\" has no date of birth");
+                }
+                book.addAuthor(newAuthor(author.substring(0, colon), author.substring(colon + 1)));
+            }
+        }
+
+        return checkAuthors(book);
+    }
+
+    private String csvField(List<String> fields, String column) {
+        int index = csvColumns.get(column);
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    /**
+     * Split a CSV line on commas outside double quotes. Two double quotes in
+     * a quoted field are one double quote.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList();
+        StringBuilder field = new StringBuilder();
+        boolean isQuoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (isQuoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    isQuoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                isQuoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private Book newBook(String title, String isbn, String published, String genre) {
+        if (isBlank(title)) {
+            throw new IllegalArgumentException("The book has no title");
+        }
+        if (isBlank(isbn) || !isValidIsbn(isbn)) {
+            throw new IllegalArgumentException("Invalid isbn \"" + isbn + "\"");
+        }
+        if (isBlank(published)) {
+            throw new IllegalArgumentException("The book has no publishing date");
+        }
+        if (isBlank(genre)) {
+            throw new IllegalArgumentException("The book has no genre");
+        }
+        return new Book(new ObjectId(), title.trim(), SearchKeys.normalizeIsbn(isbn), LocalDate.parse(published.trim()), Genre.valueOf(genre.trim()), 0.0, addedBy);
+    }
+
+    private Author newAuthor(String name, String dateOfBirth) {
+        if (isBlank(name)) {
+            throw new IllegalArgumentException("An author has no name");
+        }
+        if (isBlank(dateOfBirth)) {
+            throw new IllegalArgumentException("Author \"" + name.trim() + "\" has no date of birth");
+        }
+        return new Author(name.trim(), LocalDate.parse(dateOfBirth.trim()), addedBy);
+    }
+
+    private Review newReview(double rating, String text, String dateAdded, String username) {
+        if (rating < 0.0 || rating > 5.0) {
+            throw new IllegalArgumentException("Review rating " + rating + " is not between 0 and 5");
+        }
+        LocalDate added = isBlank(dateAdded) ? LocalDate.now() : LocalDate.parse(dateAdded.trim());
+        // an export writes a null username for a review whose user is gone
+        User user = new User(isBlank(username) ? null : username.trim().toLowerCase());
+        return new Review(rating, text == null ? "" : text, added, user);
+    }
+
+    private Book checkAuthors(Book book) {
+        if (book.getAuthors().isEmpty()) {
+            throw new IllegalArgumentException("The book has no authors");
+        }
+        return book;
+    }
+
+    private static boolean isValidIsbn(String isbn) {
+        isbn = SearchKeys.normalizeIsbn(isbn);
+        return isbn.matches("[0-9]{13}") && (isbn.startsWith("979") || isbn.startsWith("978"));
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
+}
@@ -0,0 +1,259 @@
+package model;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import org.bson.types.ObjectId;
+
+/**
+ * Imports a feed of books, gzipped if its name ends in ".gz", into the books
+ * collection as a two stage pipeline.
+ * A parser thread reads and validates the feed into batches, and the calling
+ * thread writes each batch with one unordered {@code insertMany}. The queue
+ * between them is bounded, so a parser that runs ahead of the database waits
+ * instead of filling the heap.
+ *
+ * After every batch the number of lines written so far is saved to a
+ * checkpoint file. An import that fails can be run again on the same feed
+ * and continues after the checkpoint. Books already in the database are
+ * rejected by the unique isbn index and counted as duplicates, so lines
+ * written again after a failure do no harm.
+ *
+ * When reviews are kept in buckets, the buckets of a batch are written
+ * before its books, and removed again for the books that were duplicates.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookImporter {
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int MAX_ERRORS = 100;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MongoCollection<Book> bookCollection;
+    private final ReviewBuckets reviewBuckets;
+    private final User addedBy;
+    private final int batchSize;
+    private final int queueSize;
+
+    private long rowsRead;
+    private long rowsRejected;
+    private final List<String> errors;
+    private volatile IOException parseError;
+
+    /**
+     * @param bookCollection
+     * @param reviewBuckets the buckets to write the reviews to, or null if
+     * the reviews are embedded in the books
+     * @param addedBy
+     * @param batchSize
+     * @param queueSize
+     */
+    public BookImporter(MongoCollection<Book> bookCollection, ReviewBuckets reviewBuckets, User addedBy, int batchSize, int queueSize) {
+        this.bookCollection = bookCollection;
+        this.reviewBuckets = reviewBuckets;
+        this.addedBy = addedBy;
+        this.batchSize = batchSize;
+        this.queueSize = queueSize;
+        this.errors = new ArrayList();
+    }
+
+    /**
+     * Import the feed, continuing after the checkpoint if there is one. The
+     * checkpoint is deleted when the whole feed has been imported.
+     *
+     * @param feed the NDJSON or CSV file to import
+     * @param checkpoint the file to keep the number of written lines in
+     * @return the {@code ImportReport} of the import
+     * @throws IOException if the feed or the checkpoint cannot be read or
+     * written
+     */
+    public ImportReport importFeed(Path feed, Path checkpoint) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long resumedAtLine = readCheckpoint(checkpoint);
+
+        long inserted = 0;
+        long duplicates = 0;
+
+        try (BufferedReader reader = openReader(feed)) {
+            BookFeedReader feedReader = new BookFeedReader(reader, BookFeedReader.formatOf(feed.toString()), addedBy);
+            feedReader.skipTo(resumedAtLine);
+
+            BlockingQueue<Batch> queue = new ArrayBlockingQueue(queueSize);
+            Thread parser = new Thread(() -> parse(feedReader, queue), "books-import-parser");
+            parser.setDaemon(true);
+            parser.start();
+
+            try {
+                Batch batch = queue.take();
+                while (!batch.isLast) {
+                    int written = insert(batch.books);
+                    inserted += written;
+                    duplicates += batch.books.size() - written;
+                    writeCheckpoint(checkpoint, batch.lastLineNr);
+                    batch = queue.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("The import was interrupted", e);
+            } finally {
+                // stops a parser blocked on a full queue when a write failed
+                parser.interrupt();
+            }
+        }
+
+        if (parseError != null) {
+            throw parseError;
+        }
+        Files.deleteIfExists(checkpoint);
+
+        synchronized (this) {
+            return new ImportReport(rowsRead, inserted, rowsRejected, duplicates, resumedAtLine,
+                    System.currentTimeMillis() - startTime, errors);
+        }
+    }
+
+    static BufferedReader openReader(Path feed) throws IOException {
+        InputStream in = Files.newInputStream(feed);
+        if (feed.getFileName().toString().toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private void parse(BookFeedReader feedReader, BlockingQueue<Batch> queue) {
+        boolean isAbandoned = false;
+        try {
+            readBatches(feedReader, queue);
+        } catch (IOException e) {
+            parseError = e;
+        } catch (InterruptedException e) {
+            // the writer has given up
+            isAbandoned = true;
+        } catch (Throwable e) {
+            parseError = new IOException("The feed could not be parsed", e);
+        } finally {
+            // the writer waits for the last batch however the parsing ended
+            if (!isAbandoned) {
+                try {
+                    queue.put(new Batch(new ArrayList(), 0, true));
+                } catch (InterruptedException e) {
+                    // the writer has given up
+                }
+            }
+        }
+    }
+
+    private void readBatches(BookFeedReader feedReader, BlockingQueue<Batch> queue) throws IOException, InterruptedException {
+        List<Book> books = new ArrayList(batchSize);
+        long lastLineNr = 0;
+
+        BookFeedReader.Row row = feedReader.next();
+        while (row != null) {
+            countRow(row);
+            if (row.getBook() != null) {
+                books.add(row.getBook());
+            }
+            lastLineNr = row.getLineNr();
+
+            if (books.size() == batchSize) {
+                queue.put(new Batch(books, lastLineNr, false));
+                books = new ArrayList(batchSize);
+            }
+            row = feedReader.next();
+        }
+        if (!books.isEmpty()) {
+            queue.put(new Batch(books, lastLineNr, false));
+        }
+    }
+
+    private synchronized void countRow(BookFeedReader.Row row) {
+        rowsRead++;
+        if (row.getError() != null) {
+            rowsRejected++;
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("Line " + row.getLineNr() + ": " + row.getError());
+            }
+        }
+    }
+
+    /**
+     * Insert the books without stopping at the first error. Books that are
+     * already in the database are skipped, any other error fails the import.
+     *
+     * @return the number of books inserted
+     */
+    private int insert(List<Book> books) {
+        if (reviewBuckets != null) {
+            reviewBuckets.insertReviews(books);
+        }
+        try {
+            bookCollection.insertMany(books, new InsertManyOptions().ordered(false));
+            return books.size();
+        } catch (MongoBulkWriteException e) {
+            List<ObjectId> duplicates = new ArrayList();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                duplicates.add(books.get(error.getIndex()).getBId());
+            }
+            if (e.getWriteConcernError() != null) {
+                throw e;
+            }
+            if (reviewBuckets != null) {
+                reviewBuckets.deleteReviews(duplicates);
+            }
+            return books.size() - duplicates.size();
+        }
+    }
+
+    private static long readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return 0;
+        }
+        String saved = new String(Files.readAllBytes(checkpoint), StandardCharsets.UTF_8).trim();
+        try {
+            return Long.parseLong(saved);
+        } catch (NumberFormatException e) {
+            throw new IOException("The checkpoint " + checkpoint + " is not a line number", e);
+        }
+    }
+
+    /**
+     * Replace the checkpoint in one move, so a crash leaves either the old or
+     * the new line number and never half a file.
+     */
+    private static void writeCheckpoint(Path checkpoint, long lineNr) throws IOException {
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        Files.write(temp, Long.toString(lineNr).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Batch {
+
+        private final List<Book> books;
+        private final long lastLineNr;
+        private final boolean isLast;
+
+        private Batch(List<Book> books, long lastLineNr, boolean isLast) {
+            this.books = books;
+            this.lastLineNr = lastLineNr;
+            this.isLast = isLast;
+        }
+    }
+}
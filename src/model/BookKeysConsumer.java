@@ -0,0 +1,23 @@
+package model;
+
+import java.util.List;
+import org.bson.types.ObjectId;
+
+/**
+ * Receives the search keys of the books one book at a time, so every book
+ * can be indexed without the books being loaded.
+ *
+ * @author Umar A & Rabi S
+ */
+public interface BookKeysConsumer {
+
+    /**
+     * Called once for each book.
+     *
+     * @param bookId
+     * @param titleKeys the normalized words of the title
+     * @param authorKeys the normalized words of the author names
+     * @param isbn
+     */
+    public void accept(ObjectId bookId, List<String> titleKeys, List<String> authorKeys, String isbn);
+}
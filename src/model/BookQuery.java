@@ -0,0 +1,161 @@
+package model;
+
+/**
+ * A search on any combination of the criteria of the single searches, with
+ * an optional order and limit. Criteria that are not set do not filter, and
+ * the criteria that are set must all match.
+ *
+ * @author Umar A & Rabi S
+ */
+public class BookQuery {
+
+    /**
+     * Representation of the orders a query result can be sorted in.
+     */
+    public enum SortField {
+        Title, Rating, Published
+    }
+
+    private String title;
+    private String isbn;
+    private String author;
+    private String keywords;
+    private Genre genre;
+    private Double minRating;
+    private Double maxRating;
+    private SortField sortField;
+    private boolean descending;
+    private int limit;
+
+    public BookQuery() {
+        this.limit = 0;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @param title the start of a word in the title, or null for any title
+     */
+    public void setTitle(String title) {
+        this.title = blankToNull(title);
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * @param isbn the start of the isbn, or null for any isbn
+     */
+    public void setIsbn(String isbn) {
+        this.isbn = blankToNull(isbn);
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    /**
+     * @param author the start of a word in an author name, or null for any
+     * author
+     */
+    public void setAuthor(String author) {
+        this.author = blankToNull(author);
+    }
+
+    public String getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * @param keywords words in the title or an author name, or null for any
+     */
+    public void setKeywords(String keywords) {
+        this.keywords = blankToNull(keywords);
+    }
+
+    public Genre getGenre() {
+        return genre;
+    }
+
+    /**
+     * @param genre the genre, or null for any genre
+     */
+    public void setGenre(Genre genre) {
+        this.genre = genre;
+    }
+
+    public Double getMinRating() {
+        return minRating;
+    }
+
+    /**
+     * @param minRating the lowest rating, or null for no lower bound
+     */
+    public void setMinRating(Double minRating) {
+        this.minRating = minRating;
+    }
+
+    public Double getMaxRating() {
+        return maxRating;
+    }
+
+    /**
+     * @param maxRating the highest rating, or null for no upper bound
+     */
+    public void setMaxRating(Double maxRating) {
+        this.maxRating = maxRating;
+    }
+
+    public SortField getSortField() {
+        return sortField;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * @param sortField the order of the result, or null for the order of the
+     * database, by relevance when there are keywords
+     * @param descending if the order is reversed
+     */
+    public void setSort(SortField sortField, boolean descending) {
+        this.sortField = sortField;
+        this.descending = descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param limit the most books in the result, or 0 for no limit
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Check if no criteria are set, so the query would find every book.
+     *
+     * @return a {@code boolean} if the query has no criteria
+     */
+    public boolean isEmpty() {
+        return title == null && isbn == null && author == null && keywords == null
+                && genre == null && minRating == null && maxRating == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BookQuery{" + "title=" + title + ", isbn=" + isbn + ", author=" + author + ", keywords=" + keywords
+                + ", genre=" + genre + ", minRating=" + minRating + ", maxRating=" + maxRating
+                + ", sortField=" + sortField + ", descending=" + descending + ", limit=" + limit + '}';
+    }
+
+    private static String blankToNull(String text) {
+        return text == null || text.trim().isEmpty() ? null : text.trim();
+    }
+}
@@ -1,23 +1,61 @@
 package model;
 
-import com.mongodb.MongoClient;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoException;
+import com.mongodb.MongoServerException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
-import com.mongodb.MongoClientURI;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndDeleteOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.BsonDocument;
 import org.bson.Document;
 import com.mongodb.client.FindIterable;
-import com.mongodb.client.MongoCursor;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.gt;
 import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
 import static com.mongodb.client.model.Filters.lte;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.or;
 import static com.mongodb.client.model.Filters.regex;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import static com.mongodb.client.model.Filters.text;
+import static com.mongodb.client.model.Projections.exclude;
+import static com.mongodb.client.model.Projections.excludeId;
+import static com.mongodb.client.model.Projections.fields;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Sorts.metaTextScore;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
+import org.bson.codecs.configuration.CodecRegistry;
+import static org.bson.codecs.configuration.CodecRegistries.fromCodecs;
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
@@ -31,510 +69,871 @@ import org.bson.types.ObjectId;
  */
 public class BooksDb implements BooksDbInterface {
 
-    private MongoClientURI clientURI;
     private MongoDatabase mongoBooksDb;
     private MongoClient mongoClient;
     private MongoCollection<Document> booksCollection;
     private MongoCollection<Document> usersCollection;
-
-    private User currentUser;
+    private MongoCollection<Book> bookCollection;
+    private ReviewBuckets reviewBuckets;
+    private IndexManager indexManager;
+    private BookChangeWatcher changeWatcher;
+    // where the next watcher resumes, kept across logins and reconnects
+    private BsonDocument changesResumeToken;
+    private volatile BloomFilter knownUsernames;
+    private volatile BloomFilter knownIsbns;
+
+    private final SessionTokens sessions;
+    private volatile String sessionToken;
 
     private final String connectionString;
     private final String databaseString;
 
-    private final SimpleDateFormat formattedDate;
-    private final DecimalFormat formattedRating;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long maxIdleMillis;
+    private final int maxWaitQueueSize;
+
+    private final CodecRegistry codecRegistry;
+    private final ReviewStorage reviewStorage;
+    private final SlowCommandLog slowCommandLog;
+
+    private static final Bson SUMMARY = exclude("reviews", "titleKeys", "authorKeys");
+
+    // books per insertMany, and batches the feed parser may read ahead
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int IMPORT_QUEUE_SIZE = 4;
+    // books per cursor batch of an export
+    private static final int EXPORT_BATCH_SIZE = 2000;
+
+    private static final Logger LOGGER = Logger.getLogger(BooksDb.class.getName());
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final double FILTER_FALSE_POSITIVES = 0.01;
+    private static final int MIN_FILTER_SIZE = 1024;
 
     public BooksDb() {
+        this(ReviewStorage.EMBEDDED);
+    }
+
+    public BooksDb(ReviewStorage reviewStorage) {
+        this(reviewStorage, null);
+    }
+
+    public BooksDb(ReviewStorage reviewStorage, SlowCommandLog slowCommandLog) {
+        this(reviewStorage, 1, 20, 60000, 100, slowCommandLog);
+    }
+
+    /**
+     * Create a BooksDb whose single MongoClient keeps a connection pool of the
+     * given size, shared by every guest and user session.
+     *
+     * @param minPoolSize connections kept open even when idle
+     * @param maxPoolSize the most connections open at the same time
+     * @param maxIdleMillis how long an idle connection is kept above the
+     * minimum
+     * @param maxWaitQueueSize the most threads waiting for a connection
+     */
+    public BooksDb(int minPoolSize, int maxPoolSize, long maxIdleMillis, int maxWaitQueueSize) {
+        this(ReviewStorage.EMBEDDED, minPoolSize, maxPoolSize, maxIdleMillis, maxWaitQueueSize);
+    }
+
+    /**
+     * Create a BooksDb that keeps the reviews where the storage mode says,
+     * with a connection pool of the given size.
+     *
+     * @param reviewStorage whether reviews are embedded in the books or kept
+     * in buckets of the reviews collection
+     * @param minPoolSize connections kept open even when idle
+     * @param maxPoolSize the most connections open at the same time
+     * @param maxIdleMillis how long an idle connection is kept above the
+     * minimum
+     * @param maxWaitQueueSize the most threads waiting for a connection
+     */
+    public BooksDb(ReviewStorage reviewStorage, int minPoolSize, int maxPoolSize, long maxIdleMillis, int maxWaitQueueSize) {
+        this(reviewStorage, minPoolSize, maxPoolSize, maxIdleMillis, maxWaitQueueSize, null);
+    }
+
+    /**
+     * Create a BooksDb that keeps the reviews where the storage mode says,
+     * with a connection pool of the given size, and writes the commands
+     * slower than the threshold of the given log to it.
+     *
+     * @param reviewStorage whether reviews are embedded in the books or kept
+     * in buckets of the reviews collection
+     * @param minPoolSize connections kept open even when idle
+     * @param maxPoolSize the most connections open at the same time
+     * @param maxIdleMillis how long an idle connection is kept above the
+     * minimum
+     * @param maxWaitQueueSize the most threads waiting for a connection
+     * @param slowCommandLog the log of slow commands, or null to log none
+     */
+    public BooksDb(ReviewStorage reviewStorage, int minPoolSize, int maxPoolSize, long maxIdleMillis, int maxWaitQueueSize, SlowCommandLog slowCommandLog) {
         connectionString = "mongodb://localhost:27017/?readPreference=primary&appname=MongoDB%20Compass&ssl=false";
         databaseString = "MongoBooksDB";
-        formattedDate = new SimpleDateFormat("yyyy-MM-dd");
-        formattedRating = new DecimalFormat("#0.0");
-        currentUser = null;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maxWaitQueueSize = maxWaitQueueSize;
+        this.reviewStorage = reviewStorage;
+        this.slowCommandLog = slowCommandLog;
+        codecRegistry = fromRegistries(fromCodecs(new BookCodec(reviewStorage == ReviewStorage.EMBEDDED)),
+                MongoClientSettings.getDefaultCodecRegistry());
+        sessions = new SessionTokens();
+        sessionToken = null;
     }
 
     @Override
     public void loginAsGuest() {
-        clientURI = new MongoClientURI(connectionString);
-        mongoClient = new MongoClient(clientURI);
-        mongoBooksDb = mongoClient.getDatabase(databaseString);
-        booksCollection = mongoBooksDb.getCollection("books");
-        usersCollection = mongoBooksDb.getCollection("users");
-
-        currentUser = null;
+        if (mongoClient == null) {
+            connect();
+        }
+        sessions.revoke(sessionToken);
+        sessionToken = null;
     }
 
+    /**
+     * Checks the credentials with one query on the unique username index
+     * and starts a session. A password still stored in plain text is
+     * replaced by its hash on the first login that matches it.
+     */
     @Override
     public User loginAsUser(User user) {
-        FindIterable<Document> username = usersCollection.find(eq("username", user.getUsername()));
-        FindIterable<Document> password = usersCollection.find(eq("password", user.getPassword()));
+        User verified = verify(user);
+        if (verified == null) {
+            return null;
+        }
+        sessions.revoke(sessionToken);
+        sessionToken = sessions.issue(verified);
+        return sessions.userOf(sessionToken);
+    }
 
-        MongoCursor<Document> usernameCursor = username.iterator();
-        MongoCursor<Document> passwordCursor = password.iterator();
+    @Override
+    public void watchBooks(BookChangeListener listener) {
+        stopWatching();
+        // books added by other clients are known as soon as they are seen
+        changeWatcher = new BookChangeWatcher(bookCollection, new BookChangeListener() {
+            @Override
+            public void bookChanged(Book book) {
+                if (book.getIsbn() != null) {
+                    knownIsbns.put(SearchKeys.normalizeIsbn(book.getIsbn()));
+                }
+                listener.bookChanged(book);
+            }
+
+            @Override
+            public void bookRemoved(ObjectId bookId) {
+                listener.bookRemoved(bookId);
+            }
+
+            @Override
+            public void booksResynced() {
+                loadKnownIsbns();
+                listener.booksResynced();
+            }
+        }, changesResumeToken);
+        changeWatcher.start();
+    }
 
-        Document usernameDoc = usernameCursor.next();
-        Document passwordDoc = passwordCursor.next();
+    private void stopWatching() {
+        if (changeWatcher != null) {
+            changeWatcher.stop();
+            if (changeWatcher.getResumeToken() != null) {
+                changesResumeToken = changeWatcher.getResumeToken();
+            }
+            changeWatcher = null;
+        }
+    }
 
-        currentUser = new User(usernameDoc.getString("username"), passwordDoc.getString("password"));
+    @Override
+    public void disconnect() {
+        stopWatching();
+        if (mongoClient != null) {
+            if (slowCommandLog != null) {
+                slowCommandLog.setClient(null);
+            }
+            mongoClient.close();
+            mongoClient = null;
+        }
+    }
 
-        mongoClient.close();
+    /**
+     * Creates the one MongoClient used for the lifetime of this BooksDb and
+     * prepares the collections, the stored fields and the indexes. The stored
+     * fields are backfilled by schema migrations, which only run on a
+     * database that has not had them yet. Every command of the client passes
+     * the slow command log, if there is one.
+     */
+    @SuppressWarnings("deprecation")
+    private void connect() {
+        MongoClientSettings.Builder settings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionString))
+                .codecRegistry(codecRegistry)
+                .applyToConnectionPoolSettings(pool -> pool
+                        .minSize(minPoolSize)
+                        .maxSize(maxPoolSize)
+                        .maxConnectionIdleTime(maxIdleMillis, TimeUnit.MILLISECONDS)
+                        .maxWaitQueueSize(maxWaitQueueSize));
+        if (slowCommandLog != null) {
+            settings.addCommandListener(slowCommandLog);
+        }
 
-        clientURI = new MongoClientURI(connectionString);
-        mongoClient = new MongoClient(clientURI);
+        mongoClient = MongoClients.create(settings.build());
+        if (slowCommandLog != null) {
+            slowCommandLog.setClient(mongoClient);
+        }
         mongoBooksDb = mongoClient.getDatabase(databaseString);
         booksCollection = mongoBooksDb.getCollection("books");
         usersCollection = mongoBooksDb.getCollection("users");
+        bookCollection = booksCollection.withDocumentClass(Book.class);
+        reviewBuckets = new ReviewBuckets(mongoBooksDb.getCollection("reviews"), ReviewBuckets.DEFAULT_BUCKET_SIZE);
 
-        return currentUser;
+        indexManager = new IndexManager(mongoBooksDb, booksCollection, usersCollection, reviewBuckets.getCollection());
+        for (String failed : indexManager.ensureIndexes()) {
+            // the queries on that index still work, as collection scans
+            LOGGER.warning("Could not create index " + failed);
+        }
+        logQueryPlans();
+        // after the indexes, so the unique isbn index guards the migrations
+        new SchemaMigrations(mongoBooksDb.getCollection("schema"))
+                .add(this::backfillReviewTotals)
+                .add(this::backfillSearchKeys)
+                .add(this::backfillNormalizedIsbns)
+                .migrate();
+        loadKnownUsernames();
+        loadKnownIsbns();
     }
 
     @Override
-    public void disconnect() {
-        mongoClient.close();
+    public List<Book> getTheBooks() {
+        return findBooks(new Document());
     }
 
     @Override
-    public List<Book> getTheBooks() {
-        FindIterable<Document> bookIt = booksCollection.find();
-
-        List<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = bookIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
+    public List<Book> getTheBooks(ObjectId afterId, int pageSize) {
+        Bson filter = afterId == null ? new Document() : gt("_id", afterId);
 
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
-
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
-
-            List<Document> authors = bookDoc.getList("authors", Document.class);
+        return bookCollection.find(filter).projection(SUMMARY).sort(ascending("_id")).limit(pageSize).into(new ArrayList());
+    }
 
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
+    @Override
+    public List<Book> getBooksById(List<ObjectId> bookIds) {
+        Map<ObjectId, Book> byId = new HashMap();
+        for (Book book : findBooks(in("_id", bookIds))) {
+            byId.put(book.getBId(), book);
+        }
 
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
+        List<Book> books = new ArrayList();
+        for (int i = 0; i < bookIds.size(); i++) {
+            Book book = byId.get(bookIds.get(i));
+            if (book != null) {
+                books.add(book);
             }
+        }
+        return books;
+    }
 
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
-
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
-
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
-                }
-            }
-            list.add(book);
+    /**
+     * Reads only the stored keys, so the books are never decoded.
+     */
+    @Override
+    public void forEachBookKeys(BookKeysConsumer consumer) {
+        FindIterable<Document> keys = booksCollection.find()
+                .projection(include("titleKeys", "authorKeys", "isbn"))
+                .batchSize(EXPORT_BATCH_SIZE);
+        for (Document book : keys) {
+            consumer.accept(book.getObjectId("_id"),
+                    book.getList("titleKeys", String.class, Collections.emptyList()),
+                    book.getList("authorKeys", String.class, Collections.emptyList()),
+                    book.getString("isbn"));
         }
-        return list;
     }
 
     @Override
     public Book addBookToDb(Book bookToBeAdded) {
-        Document bookDoc = new Document();
-        bookDoc.append("title", bookToBeAdded.getTitle());
-        bookDoc.append("isbn", bookToBeAdded.getIsbn());
-        bookDoc.append("published", bookToBeAdded.getPublished());
-        bookDoc.append("genre", bookToBeAdded.getGenre().name());
-        bookDoc.append("rating", bookToBeAdded.getRating());
-        bookDoc.append("username", currentUser.getUsername());
-
-        ArrayList<Document> authors = new ArrayList();
-        for (int i = 0; i < bookToBeAdded.getAuthors().size(); i++) {
-            Document author = new Document();
-            author.append("name", bookToBeAdded.getAuthors().get(i).getName());
-            author.append("birthDate", bookToBeAdded.getAuthors().get(i).getDateOfBirth());
-            author.append("addedByUser", currentUser.getUsername());
-            authors.add(author);
+        // the id is generated here, so the added book can be returned
+        // without reading it back from the database
+        if (!isIsbnAvailable(bookToBeAdded.getIsbn())) {
+            throw new IllegalArgumentException("A book with the isbn " + bookToBeAdded.getIsbn() + " already exists");
         }
+        User addedBy = new User(requireUser().getUsername());
+        Book addedBook = new Book(new ObjectId(), bookToBeAdded.getTitle(), SearchKeys.normalizeIsbn(bookToBeAdded.getIsbn()),
+                bookToBeAdded.getPublished(), bookToBeAdded.getGenre(), bookToBeAdded.getRating(), addedBy);
 
-        bookDoc.append("authors", authors);
-
-        booksCollection.insertOne(bookDoc);
-        bookDoc = booksCollection.find(bookDoc).first();
+        for (int i = 0; i < bookToBeAdded.getAuthors().size(); i++) {
+            Author author = bookToBeAdded.getAuthors().get(i);
+            addedBook.addAuthor(new Author(author.getName(), author.getDateOfBirth(), addedBy));
+        }
 
-        if (bookDoc != null) {
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = bookDoc.getDouble("rating");
+        // the unique isbn index catches a book added by another client since
+        // the check
+        try {
+            bookCollection.insertOne(addedBook);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCode() != DUPLICATE_KEY) {
+                throw e;
+            }
+            // added by another client, so the next check asks the database
+            knownIsbns.put(addedBook.getIsbn());
+            throw new IllegalArgumentException("A book with the isbn " + bookToBeAdded.getIsbn() + " already exists");
+        }
+        knownIsbns.put(addedBook.getIsbn());
+        return addedBook;
+    }
 
-            bookToBeAdded = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
-            return bookToBeAdded;
+    @Override
+    public ImportReport importBooks(File feed) throws IOException {
+        BookImporter importer = new BookImporter(bookCollection, bucketsIfUsed(), new User(requireUser().getUsername()), IMPORT_BATCH_SIZE, IMPORT_QUEUE_SIZE);
+
+        try {
+            return importer.importFeed(feed.toPath(), new File(feed.getPath() + ".checkpoint").toPath());
+        } finally {
+            // the filter is sized again for the books imported
+            loadKnownIsbns();
         }
-        return null;
+    }
+
+    @Override
+    public ExportReport exportBooks(File target) throws IOException {
+        return new BookExporter(bookCollection, bucketsIfUsed(), EXPORT_BATCH_SIZE).exportFeed(target.toPath());
     }
 
     @Override
     public Book deleteBookFromDb(Book bookToBeDeleted) {
-        if (bookToBeDeleted.getUser().getUsername().equals(currentUser.getUsername())) {
+        if (bookToBeDeleted.getUser().getUsername().equals(requireUser().getUsername())) {
 
             Document book = new Document();
             book.append("_id", bookToBeDeleted.getBId());
 
-            book = booksCollection.findOneAndDelete(book);
-
-            if (book != null) {
-                ObjectId _id = book.getObjectId("_id");
-                String title = book.getString("title");
-                String isbn = book.getString("isbn");
-                String published = formattedDate.format(book.getDate("published"));
-                String genre = book.getString("genre");
-                double rating = book.getDouble("rating");
-
-                bookToBeDeleted = new Book(_id, title, isbn, published, genre, rating, new User(book.getString("username")));
-
-                return bookToBeDeleted;
+            Book deleted = bookCollection.findOneAndDelete(book, new FindOneAndDeleteOptions().projection(SUMMARY));
+            if (deleted != null && reviewStorage == ReviewStorage.BUCKETED) {
+                reviewBuckets.deleteReviews(deleted.getBId());
             }
+            return deleted;
         }
         return null;
     }
 
     @Override
-    public Review addReviewToDb(Book reviewToBeAdded) {
-        Document bookDoc = new Document();
-        bookDoc.append("_id", reviewToBeAdded.getBId());
-
-        Document revDoc = new Document();
-        revDoc.append("title", reviewToBeAdded.getTitle());
-        revDoc.append("isbn", reviewToBeAdded.getIsbn());
-        revDoc.append("published", reviewToBeAdded.getPublished());
-        revDoc.append("genre", reviewToBeAdded.getGenre().name());
-
-        ArrayList<Document> authors = new ArrayList();
-        for (int i = 0; i < reviewToBeAdded.getAuthors().size(); i++) {
-            Document author = new Document();
-            author.append("name", reviewToBeAdded.getAuthors().get(i).getName());
-            author.append("birthDate", reviewToBeAdded.getAuthors().get(i).getDateOfBirth());
-            author.append("addedByUser", reviewToBeAdded.getUser().getUsername());
-            authors.add(author);
-        }
-
-        int nrOfRatings = reviewToBeAdded.getReviews().size();
-        double totalRating = 0.0;
-
-        ArrayList<Document> reviews = new ArrayList();
-        for (int i = 0; i < reviewToBeAdded.getReviews().size(); i++) {
-            if (i == reviewToBeAdded.getReviews().size() - 1) {
-                Document review = new Document();
-                review.append("rating", reviewToBeAdded.getReviews().get(i).getbRating());
-                review.append("text", reviewToBeAdded.getReviews().get(i).getRevString());
-                review.append("dateAdded", reviewToBeAdded.getReviews().get(i).getDateAdded());
-                review.append("addedByUser", currentUser.getUsername());
-                reviews.add(review);
-                totalRating += reviewToBeAdded.getReviews().get(i).getbRating();
-            } else {
-                Document review = new Document();
-                review.append("rating", reviewToBeAdded.getReviews().get(i).getbRating());
-                review.append("text", reviewToBeAdded.getReviews().get(i).getRevString());
-                review.append("dateAdded", reviewToBeAdded.getReviews().get(i).getDateAdded());
-                review.append("addedByUser", reviewToBeAdded.getReviews().get(i).getUser().getUsername());
-                reviews.add(review);
-                totalRating += reviewToBeAdded.getReviews().get(i).getbRating();
+    public Book addReviewToDb(Book reviewToBeAdded) {
+        // the new review is the last one added to the book by the dialog
+        int lastReview = reviewToBeAdded.getReviews().size() - 1;
+        if (lastReview < 0) {
+            return null;
+        }
+        Review newReview = reviewToBeAdded.getReviews().get(lastReview);
+        String username = requireUser().getUsername();
+
+        Document review = new Document();
+        review.append("rating", newReview.getbRating());
+        review.append("text", newReview.getRevString());
+        review.append("dateAdded", newReview.getDateAdded());
+        review.append("addedByUser", username);
+
+        Document reviewCount = new Document("$add", Arrays.asList("$reviewCount", 1));
+        Document ratingSum = new Document("$add", Arrays.asList("$ratingSum", newReview.getbRating()));
+        Document rating = new Document("$divide", Arrays.asList("$ratingSum", "$reviewCount"));
+        FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().projection(SUMMARY).returnDocument(ReturnDocument.AFTER);
+
+        if (reviewStorage == ReviewStorage.BUCKETED) {
+            // the buckets decide if the review is added, the totals of the
+            // book only follow a review that was
+            if (!reviewBuckets.addReviewOnce(reviewToBeAdded.getBId(), username, review)) {
+                return null;
+            }
+            List<Bson> update = Arrays.asList(
+                    combine(set("reviewCount", reviewCount), set("ratingSum", ratingSum)),
+                    set("rating", rating));
+
+            Book reviewed = bookCollection.findOneAndUpdate(eq("_id", reviewToBeAdded.getBId()), update, options);
+            if (reviewed == null) {
+                // the book was removed meanwhile, so was its review
+                reviewBuckets.deleteReviews(reviewToBeAdded.getBId());
             }
+            return reviewed;
         }
 
-        reviewToBeAdded.setRating(totalRating / nrOfRatings);
-
-        revDoc.append("rating", reviewToBeAdded.getRating());
-        revDoc.append("username", reviewToBeAdded.getUser().getUsername());
-
-        revDoc.append("authors", authors);
-        revDoc.append("reviews", reviews);
-
-        booksCollection.findOneAndReplace(bookDoc, revDoc);
+        Bson filter = and(eq("_id", reviewToBeAdded.getBId()), ne("reviews.addedByUser", username));
 
-        revDoc = booksCollection.find(revDoc).first();
+        // $literal keeps the review text from being read as an expression
+        Document reviews = new Document("$concatArrays", Arrays.asList(
+                new Document("$ifNull", Arrays.asList("$reviews", Collections.emptyList())),
+                Collections.singletonList(new Document("$literal", review))));
 
-        int lastBook = reviewToBeAdded.getReviews().size() - 1;
+        List<Bson> update = Arrays.asList(
+                combine(set("reviews", reviews), set("reviewCount", reviewCount), set("ratingSum", ratingSum)),
+                set("rating", rating));
 
-        if (revDoc != null) {
-            List<Document> reviewsFromDb = revDoc.getList("reviews", Document.class);
-
-            double rating = reviewsFromDb.get(lastBook).getDouble("rating");
-            String text = reviewsFromDb.get(lastBook).getString("text");
-            String dateAdded = formattedDate.format(reviewsFromDb.get(lastBook).getDate("dateAdded"));
-            String addedByUser = reviewsFromDb.get(lastBook).getString("addedByUser");
-
-            Review revToReturn = new Review(rating, text, dateAdded, new User(addedByUser));
-            return revToReturn;
-        }
-        return null;
+        Book reviewed = bookCollection.findOneAndUpdate(filter, update, options);
+        return reviewed;
     }
 
     @Override
     public User createAccToDb(User userToBeAdded) {
         Document user = new Document();
 
-        user.append("username", userToBeAdded.getUsername().toLowerCase());
-        user.append("password", userToBeAdded.getPassword());
-
-        usersCollection.insertOne(user);
+        String username = userToBeAdded.getUsername().toLowerCase();
+        user.append("username", username);
+        user.append("passwordHash", PasswordHash.hash(userToBeAdded.getPassword()));
+
+        // the unique username index catches a user made by another client
+        // since the filter was loaded
+        try {
+            usersCollection.insertOne(user);
+        } catch (MongoWriteException e) {
+            if (e.getError().getCode() != DUPLICATE_KEY) {
+                throw e;
+            }
+            // made by another client, so the next check asks the database
+            knownUsernames.put(username);
+            throw new IllegalArgumentException("The username " + username + " is taken");
+        }
+        knownUsernames.put(username);
 
         return userToBeAdded;
     }
 
+    /**
+     * Only a username the filter might hold is looked up. The filter is
+     * loaded on connecting and then only learns the usernames this client
+     * makes or is refused, since the change stream follows the books alone.
+     * A username another client has made since is reported as available, and
+     * the unique username index then refuses it in createAccToDb.
+     */
     @Override
     public boolean isUsernameAvailable(User user) {
-        Document username = usersCollection.find(eq("username", user.getUsername())).first();
+        // usernames are stored in lowercase
+        String username = user.getUsername().toLowerCase();
+        if (!knownUsernames.mightContain(username)) {
+            return true;
+        }
+        Document userDoc = usersCollection.find(usernameFilter(username)).projection(fields(include("username"), excludeId())).first();
 
-        return username == null;
+        return userDoc == null;
     }
 
+    /**
+     * Only an isbn the filter might hold is looked up, as it is typed or in
+     * the older form with hyphens, on the unique isbn index.
+     */
     @Override
-    public boolean isUser(User user) {
-        Document userDoc = new Document("username", user.getUsername());
-        userDoc.append("password", user.getPassword());
-
-        userDoc = usersCollection.find(userDoc).first();
+    public boolean isIsbnAvailable(String isbn) {
+        String normalized = SearchKeys.normalizeIsbn(isbn);
+        if (!knownIsbns.mightContain(normalized)) {
+            return true;
+        }
+        Document bookDoc = booksCollection.find(in("isbn", normalized, isbn.trim())).projection(fields(include("isbn"), excludeId())).first();
 
-        return userDoc != null;
+        return bookDoc == null;
+    }
 
+    @Override
+    public boolean isUser(User user) {
+        return verify(user) != null;
     }
 
     @Override
     public boolean isLoggedIn() {
-        return currentUser != null;
+        return currentUser() != null;
     }
 
     @Override
     public boolean isBookReviewedByUser(Book bookToBeReviewed) {
-        Document userDoc = new Document("_id", bookToBeReviewed.getBId());
-
-        userDoc.append("reviews.addedByUser", currentUser.getUsername());
-
-        userDoc = booksCollection.find(userDoc).first();
+        String username = requireUser().getUsername();
+        if (reviewStorage == ReviewStorage.BUCKETED) {
+            return reviewBuckets.isReviewedBy(bookToBeReviewed.getBId(), username);
+        }
+        Document userDoc = booksCollection.find(reviewedByFilter(bookToBeReviewed.getBId(), username)).first();
 
         return userDoc != null;
 
     }
 
     @Override
-    public List<Book> searchBooksByTitle(String titleIn) {
-        Document query = new Document("title", titleIn);
-        String pattern = ".*" + query.getString("title") + ".*";
-
-        FindIterable<Document> bookIt = booksCollection.find(regex("title", pattern, "i"));
-
-        ArrayList<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = bookIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
-
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
-
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
-
-            List<Document> authors = bookDoc.getList("authors", Document.class);
-
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
-
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
-            }
-
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
-
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
+    public List<Review> getReviewsOfBook(Book book) {
+        if (reviewStorage == ReviewStorage.BUCKETED) {
+            return reviewBuckets.getReviews(book.getBId());
+        }
+        Book withReviews = bookCollection.find(eq("_id", book.getBId())).projection(include("reviews")).first();
 
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
-                }
-            }
-            list.add(book);
+        if (withReviews != null) {
+            return withReviews.getReviews();
         }
-        return list;
+        return new ArrayList();
     }
 
     @Override
-    public List<Book> searchBooksByISBN(String isbnIn) {
-        Document query = new Document("isbn", isbnIn);
-        String pattern = query.getString("isbn") + ".*";
-
-        FindIterable<Document> bookIt = booksCollection.find(regex("isbn", pattern, "i"));
+    public List<Book> searchBooksByTitle(String titleIn) {
+        return findBooks(titleFilter(titleIn));
+    }
 
-        ArrayList<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = bookIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
+    @Override
+    public List<Book> searchBooksByISBN(String isbnIn) {
+        return findBooks(isbnFilter(isbnIn));
+    }
 
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
+    @Override
+    public List<Book> searchBooksByAuthor(String author) {
+        return findBooks(authorFilter(author));
+    }
 
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
+    @Override
+    public List<Book> searchBooksByKeywords(String keywords) {
+        Bson byScore = metaTextScore("score");
 
-            List<Document> authors = bookDoc.getList("authors", Document.class);
+        return bookCollection.find(keywordsFilter(keywords)).projection(fields(SUMMARY, byScore)).sort(byScore).into(new ArrayList());
+    }
 
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
+    @Override
+    public List<Book> searchBooksByRating(double min, double max) {
+        return findBooks(ratingFilter(min, max));
+    }
 
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
-            }
+    @Override
+    public List<Book> searchBooksByGenre(String genreIn) {
+        return findBooks(genreFilter(genreIn));
+    }
 
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
+    @Override
+    public List<Book> searchBooks(BookQuery query) {
+        FindIterable<Book> found = bookCollection.find(queryFilter(query));
+
+        if (query.getSortField() != null) {
+            String field = query.getSortField().name().toLowerCase();
+            found = found.projection(SUMMARY).sort(query.isDescending() ? descending(field) : ascending(field));
+        } else if (query.getKeywords() != null) {
+            Bson byScore = metaTextScore("score");
+            found = found.projection(fields(SUMMARY, byScore)).sort(byScore);
+        } else {
+            found = found.projection(SUMMARY);
+        }
+        if (query.getLimit() > 0) {
+            found = found.limit(query.getLimit());
+        }
+        return found.into(new ArrayList());
+    }
 
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
+    @Override
+    public List<Book> suggestBooks(String prefix, SearchMode mode, int limit) {
+        Bson filter;
+        switch (mode) {
+            case Title:
+                filter = titleFilter(prefix);
+                break;
+            case Author:
+                filter = authorFilter(prefix);
+                break;
+            case ISBN:
+                filter = isbnFilter(prefix);
+                break;
+            default:
+                return new ArrayList();
+        }
+        return bookCollection.find(filter).projection(SUMMARY).limit(limit).into(new ArrayList());
+    }
 
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
-                }
+    /**
+     * Logs the plan of each search and lookup on connecting, to see which of
+     * them are served by an index. The plans are only asked for when the
+     * info level is logged.
+     */
+    private void logQueryPlans() {
+        if (!LOGGER.isLoggable(Level.INFO)) {
+            return;
+        }
+        try {
+            for (Map.Entry<String, String> plan : explainQueries().entrySet()) {
+                LOGGER.info("Query plan of " + plan.getKey() + ": " + plan.getValue());
             }
-            list.add(book);
+        } catch (MongoException e) {
+            // the plans are only informative
+            LOGGER.warning("Could not explain the queries: " + e.getMessage());
         }
-        return list;
     }
 
-    @Override
-    public List<Book> searchBooksByAuthor(String author) {
-        Document query = new Document("authors.name", author);
-        String pattern = ".*" + query.getString("authors.name") + ".*";
-
-        FindIterable<Document> bookIt = booksCollection.find(regex("authors.name", pattern, "i"));
+    /**
+     * Explains the query behind each search and lookup method of the
+     * interface, to see which of them are served by an index.
+     *
+     * @return a {@code Map<String, String>} from method name to the winning
+     * plan as described by {@code IndexManager.explain}.
+     */
+    private Map<String, String> explainQueries() {
+        Map<String, String> plans = new LinkedHashMap();
+
+        plans.put("getTheBooks", indexManager.explain(booksCollection, gt("_id", new ObjectId()), SUMMARY));
+        plans.put("searchBooksByTitle", indexManager.explain(booksCollection, titleFilter("a"), SUMMARY));
+        plans.put("searchBooksByISBN", indexManager.explain(booksCollection, isbnFilter("978"), SUMMARY));
+        plans.put("searchBooksByAuthor", indexManager.explain(booksCollection, authorFilter("a"), SUMMARY));
+        plans.put("searchBooksByKeywords", indexManager.explain(booksCollection, keywordsFilter("a"), SUMMARY));
+        plans.put("searchBooksByRating", indexManager.explain(booksCollection, ratingFilter(1.0, 5.0), SUMMARY));
+        plans.put("searchBooksByGenre", indexManager.explain(booksCollection, genreFilter(Genre.Adventure.name()), SUMMARY));
+
+        BookQuery query = new BookQuery();
+        query.setGenre(Genre.Fantasy);
+        query.setMinRating(4.0);
+        query.setAuthor("tolkien");
+        plans.put("searchBooks", indexManager.explain(booksCollection, queryFilter(query), SUMMARY));
+        if (reviewStorage == ReviewStorage.BUCKETED) {
+            plans.put("isBookReviewedByUser", indexManager.explain(reviewBuckets.getCollection(), reviewBuckets.reviewedByFilter(new ObjectId(), "a"), null));
+            plans.put("getReviewsOfBook", indexManager.explain(reviewBuckets.getCollection(), reviewBuckets.bookFilter(new ObjectId()), null));
+        } else {
+            plans.put("isBookReviewedByUser", indexManager.explain(booksCollection, reviewedByFilter(new ObjectId(), "a"), null));
+        }
+        plans.put("isUsernameAvailable", indexManager.explain(usersCollection, usernameFilter("a"), null));
 
-        ArrayList<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = bookIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
+        return plans;
+    }
 
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
+    /**
+     * Moves the reviews embedded in the book documents to buckets in the
+     * reviews collection. Run it once before using the bucketed storage mode
+     * on a database that has embedded reviews.
+     *
+     * @return a {@code long} with the number of books whose reviews were
+     * moved
+     */
+    public long migrateReviewsToBuckets() {
+        if (mongoClient == null) {
+            connect();
+        }
+        return new ReviewMigration(booksCollection, reviewBuckets).migrate();
+    }
 
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
+    private ReviewBuckets bucketsIfUsed() {
+        return reviewStorage == ReviewStorage.BUCKETED ? reviewBuckets : null;
+    }
 
-            List<Document> authors = bookDoc.getList("authors", Document.class);
+    /**
+     * Combines the criteria of the query into one filter. The genre and the
+     * rating range come first, in the order of the genre_1_rating_1 index,
+     * which serves a genre and rating query with an index range scan; the
+     * server picks another index when that one is more selective.
+     */
+    private Bson queryFilter(BookQuery query) {
+        List<Bson> filters = new ArrayList();
+
+        if (query.getGenre() != null) {
+            filters.add(genreFilter(query.getGenre().name()));
+        }
+        if (query.getMinRating() != null) {
+            filters.add(gte("rating", query.getMinRating()));
+        }
+        if (query.getMaxRating() != null) {
+            filters.add(lte("rating", query.getMaxRating()));
+        }
+        if (query.getTitle() != null) {
+            filters.add(titleFilter(query.getTitle()));
+        }
+        if (query.getAuthor() != null) {
+            filters.add(authorFilter(query.getAuthor()));
+        }
+        if (query.getIsbn() != null) {
+            filters.add(isbnFilter(query.getIsbn()));
+        }
+        if (query.getKeywords() != null) {
+            filters.add(keywordsFilter(query.getKeywords()));
+        }
 
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
+        return filters.isEmpty() ? new Document() : and(filters);
+    }
 
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
-            }
+    private Bson titleFilter(String title) {
+        return regex("titleKeys", SearchKeys.prefixPattern(title));
+    }
 
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
+    private Bson isbnFilter(String isbn) {
+        return regex("isbn", "^" + SearchKeys.escape(SearchKeys.normalizeIsbn(isbn)));
+    }
 
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
+    private Bson authorFilter(String author) {
+        return regex("authorKeys", SearchKeys.prefixPattern(author));
+    }
 
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
-                }
-            }
-            list.add(book);
-        }
-        return list;
+    private Bson keywordsFilter(String keywords) {
+        return text(keywords);
     }
 
-    @Override
-    public List<Book> searchBooksByRating(double min, double max) {
-        Bson filter = and(gte("rating", min), lte("rating", max));
+    private Bson ratingFilter(double min, double max) {
+        return and(gte("rating", min), lte("rating", max));
+    }
 
-        FindIterable<Document> ratingIt = booksCollection.find(filter);
+    private Bson genreFilter(String genre) {
+        return eq("genre", genre);
+    }
 
-        ArrayList<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = ratingIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
+    private Bson reviewedByFilter(ObjectId bookId, String username) {
+        return and(eq("_id", bookId), eq("reviews.addedByUser", username));
+    }
 
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
+    private Bson usernameFilter(String username) {
+        return eq("username", username);
+    }
 
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
+    /**
+     * Builds the filter of the lowercased usernames from the username index
+     * alone.
+     */
+    private void loadKnownUsernames() {
+        BloomFilter filter = new BloomFilter(filterSize(usersCollection.estimatedDocumentCount()), FILTER_FALSE_POSITIVES);
+        forEachIndexed(usersCollection, "username", username -> filter.put(username));
+        knownUsernames = filter;
+    }
 
-            List<Document> authors = bookDoc.getList("authors", Document.class);
+    /**
+     * Builds the filter of the normalized isbns from the isbn index alone.
+     */
+    private void loadKnownIsbns() {
+        BloomFilter filter = new BloomFilter(filterSize(booksCollection.estimatedDocumentCount()), FILTER_FALSE_POSITIVES);
+        forEachIndexed(booksCollection, "isbn", isbn -> filter.put(SearchKeys.normalizeIsbn(isbn)));
+        knownIsbns = filter;
+    }
 
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
+    /**
+     * Passes a field of every document to the action, read from the
+     * ascending index on the field. The scan is hinted to that index and
+     * leaves out the _id, so it is covered and no document is fetched. When
+     * the index is missing, because ensureIndexes could not create it, the
+     * documents are read instead and the values are passed again.
+     */
+    private void forEachIndexed(MongoCollection<Document> collection, String field, Consumer<String> action) {
+        Bson projection = fields(include(field), excludeId());
+        try {
+            forEachValue(collection.find().projection(projection).hint(ascending(field)), field, action);
+        } catch (MongoServerException e) {
+            forEachValue(collection.find().projection(projection), field, action);
+        }
+    }
 
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
+    private static void forEachValue(FindIterable<Document> docs, String field, Consumer<String> action) {
+        for (Document doc : docs) {
+            if (doc.get(field) instanceof String) {
+                action.accept(doc.getString(field));
             }
+        }
+    }
 
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
+    // room for the documents there are and as many more added while the
+    // client runs
+    private static int filterSize(long count) {
+        return (int) Math.min(Math.max(2 * count, MIN_FILTER_SIZE), Integer.MAX_VALUE);
+    }
 
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
+    /**
+     * The user of the current session, known without asking the database.
+     */
+    private User currentUser() {
+        return sessions.userOf(sessionToken);
+    }
 
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
-                }
-            }
-            list.add(book);
+    /**
+     * The user of the session, for the methods only a logged in user may
+     * call.
+     *
+     * @throws SessionExpiredException if the session has expired
+     */
+    private User requireUser() {
+        User user = currentUser();
+        if (user == null) {
+            throw new SessionExpiredException();
         }
-        return list;
+        return user;
     }
 
-    @Override
-    public List<Book> searchBooksByGenre(String genreIn) {
-        FindIterable<Document> ratingIt = booksCollection.find(eq("genre", genreIn));
-
-        ArrayList<Book> list = new ArrayList();
-        for (MongoCursor<Document> cursor = ratingIt.iterator(); cursor.hasNext();) {
-            Document bookDoc = cursor.next();
-
-            ObjectId _id = bookDoc.getObjectId("_id");
-            String title = bookDoc.getString("title");
-            String isbn = bookDoc.getString("isbn");
-            String published = formattedDate.format(bookDoc.getDate("published"));
-            String genre = bookDoc.getString("genre");
-            double rating = Double.parseDouble(formattedRating.format(bookDoc.getDouble("rating")).replace(",", "."));
+    /**
+     * Finds the user by the username alone and compares the password with
+     * the stored hash, or with the plain text password of an account made
+     * before the passwords were hashed, which is then replaced by its hash.
+     */
+    private User verify(User user) {
+        Document userDoc = usersCollection.find(usernameFilter(user.getUsername()))
+                .projection(include("username", "password", "passwordHash")).first();
+        if (userDoc == null) {
+            return null;
+        }
 
-            Book book = new Book(_id, title, isbn, published, genre, rating, new User(bookDoc.getString("username")));
+        String passwordHash = userDoc.getString("passwordHash");
+        if (passwordHash != null) {
+            return PasswordHash.matches(user.getPassword(), passwordHash) ? new User(userDoc.getString("username")) : null;
+        }
 
-            List<Document> authors = bookDoc.getList("authors", Document.class);
+        String password = userDoc.getString("password");
+        if (!PasswordHash.matchesPlain(user.getPassword(), password)) {
+            return null;
+        }
+        // only the password that was checked is replaced, if it changed in
+        // between the update finds nothing
+        usersCollection.updateOne(and(eq("_id", userDoc.getObjectId("_id")), eq("password", password)),
+                combine(set("passwordHash", PasswordHash.hash(user.getPassword())), unset("password")));
+        return new User(userDoc.getString("username"));
+    }
 
-            for (int i = 0; i < authors.size(); i++) {
-                String name = authors.get(i).getString("name");
-                String birthdate = formattedDate.format(authors.get(i).getDate("birthDate"));
+    /**
+     * Runs the query and decodes every matching document with the
+     * {@code BookCodec} registered on the collection. Reviews are left out,
+     * the books only carry their stored review count.
+     */
+    private List<Book> findBooks(Bson filter) {
+        return bookCollection.find(filter).projection(SUMMARY).into(new ArrayList());
+    }
 
-                book.addAuthor(new Author(name, birthdate, new User(authors.get(i).getString("addedByUser"))));
+    /**
+     * Stores the search keys on books that were added before the keys were
+     * kept, so prefix searches find them. Schema migration 2.
+     */
+    private void backfillSearchKeys() {
+        FindIterable<Book> unkeyed = bookCollection.find(exists("titleKeys", false)).projection(SUMMARY);
+
+        List<WriteModel<Document>> updates = new ArrayList();
+        for (Book book : unkeyed) {
+            Bson keys = combine(set("titleKeys", SearchKeys.keysOf(book.getTitle())),
+                    set("authorKeys", SearchKeys.keysOfAuthors(book.getAuthors())));
+            updates.add(new UpdateOneModel(eq("_id", book.getBId()), keys));
+
+            if (updates.size() == 1000) {
+                booksCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+                updates.clear();
             }
+        }
+        if (!updates.isEmpty()) {
+            booksCollection.bulkWrite(updates, new BulkWriteOptions().ordered(false));
+        }
+    }
 
-            List<Document> reviews = bookDoc.getList("reviews", Document.class);
-
-            if (reviews != null) {
-                for (int i = 0; i < reviews.size(); i++) {
-                    double rRating = reviews.get(i).getDouble("rating");
-                    String text = reviews.get(i).getString("text");
-                    String dateAdded = formattedDate.format(reviews.get(i).getDate("dateAdded"));
-
-                    book.addReview(new Review(rRating, text, dateAdded, new User(reviews.get(i).getString("addedByUser"))));
+    /**
+     * Stores the isbns of books added before the isbns were normalized
+     * without their hyphens and spaces, so searches without hyphens find
+     * them. A book whose normalized isbn is taken by another book keeps its
+     * isbn and is logged. Schema migration 3.
+     */
+    private void backfillNormalizedIsbns() {
+        FindIterable<Document> unnormalized = booksCollection.find(regex("isbn", "[-\\s]|[a-z]"))
+                .projection(include("isbn"));
+
+        for (Document book : unnormalized) {
+            String isbn = book.getString("isbn");
+            try {
+                booksCollection.updateOne(eq("_id", book.getObjectId("_id")), set("isbn", SearchKeys.normalizeIsbn(isbn)));
+            } catch (MongoWriteException e) {
+                if (e.getError().getCode() != DUPLICATE_KEY) {
+                    throw e;
                 }
+                LOGGER.warning("Could not normalize the isbn " + isbn + ", another book has it without hyphens");
             }
-            list.add(book);
         }
-        return list;
+    }
+
+    /**
+     * Stores the review count and the sum of the review ratings on books that
+     * were added before they were kept, so summary queries can read the count
+     * without the reviews and new reviews can update the rating on the server.
+     * Schema migration 1.
+     */
+    private void backfillReviewTotals() {
+        Document storedReviews = new Document("$ifNull", Arrays.asList("$reviews", Collections.emptyList()));
+        Document reviewCount = new Document("$size", storedReviews);
+        Document ratingSum = new Document("$sum", "$reviews.rating");
+
+        booksCollection.updateMany(or(exists("reviewCount", false), exists("ratingSum", false)),
+                Collections.singletonList(combine(set("reviewCount", reviewCount), set("ratingSum", ratingSum))));
     }
 }
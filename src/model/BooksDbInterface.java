@@ -1,6 +1,9 @@
 package model;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import org.bson.types.ObjectId;
 
 /**
  * This interface declares methods for querying a Books database. Different
@@ -17,12 +20,14 @@ public interface BooksDbInterface {
     public void loginAsGuest();
 
     /**
-     * This method logs you in as the user that was inputted. It will
-     * log you in as an user client and you will be able manage the books.
+     * This method logs you in as the user that was inputted, if the
+     * password is right. It will log you in as an user client and you will
+     * be able manage the books.
      *
      * @param user
      * 
-     * @return a {@code boolean} if the login was successful or not 
+     * @return the logged in {@code User}, without its password, or null if
+     * the username or password is wrong
      */
     public User loginAsUser(User user);
     
@@ -31,6 +36,15 @@ public interface BooksDbInterface {
      */
     public void disconnect() ;
 
+    /**
+     * This method starts passing every change made to the books in the
+     * database, by any client, to the listener until the connection is
+     * closed.
+     *
+     * @param listener
+     */
+    public void watchBooks(BookChangeListener listener) ;
+
     /**
      * This method gets the books from the database returns the data.
      *
@@ -38,14 +52,76 @@ public interface BooksDbInterface {
      */
     public List<Book> getTheBooks() ;
 
+    /**
+     * This method gets one page of books from the database, ordered by their
+     * ObjectId. Pass the id of the last book of the previous page to get the
+     * page after it, or null to get the first page.
+     *
+     * @param afterId
+     * @param pageSize
+     * 
+     * @return a {@code List<Book>} with at most pageSize books.
+     */
+    public List<Book> getTheBooks(ObjectId afterId, int pageSize) ;
+
+    /**
+     * This method gets the books with the given ids, without their reviews.
+     * Ids of books that no longer exist are skipped.
+     *
+     * @param bookIds
+     * 
+     * @return a {@code List<Book>} with the books in the order of the ids.
+     */
+    public List<Book> getBooksById(List<ObjectId> bookIds) ;
+
+    /**
+     * This method passes the search keys of every book to the consumer, one
+     * book at a time, without loading the books.
+     *
+     * @param consumer
+     */
+    public void forEachBookKeys(BookKeysConsumer consumer) ;
+
     /**
      * This method inserts a complete book to the database.
      *
      * @param bookToBeAdded
      * 
-     * @return the {@code Book} you added to the database.
+     * @return the {@code Book} you added to the database, with its id.
+     * @throws IllegalArgumentException if a book with the isbn already
+     * exists
+     * @throws SessionExpiredException if the session of the user has
+     * expired
      */
     public Book addBookToDb(Book bookToBeAdded) ;
+
+    /**
+     * This method imports a feed of books, in NDJSON or CSV, to the database
+     * in batches. An import that failed continues where it stopped when it is
+     * run again on the same file.
+     *
+     * @param feed
+     * 
+     * @return an {@code ImportReport} with the number of imported and
+     * rejected rows and the rows per second.
+     * @throws IOException if the feed cannot be read
+     * @throws SessionExpiredException if the session of the user has
+     * expired
+     */
+    public ImportReport importBooks(File feed) throws IOException ;
+
+    /**
+     * This method writes every book in the database, with its authors and
+     * reviews, to a feed in NDJSON or CSV that can be imported again. A file
+     * name ending in ".gz" is gzipped.
+     *
+     * @param target
+     * 
+     * @return an {@code ExportReport} with the number of books and bytes
+     * written.
+     * @throws IOException if the file cannot be written
+     */
+    public ExportReport exportBooks(File target) throws IOException ;
     
     /**
      * This method searches and deletes the book in the database.
@@ -53,17 +129,22 @@ public interface BooksDbInterface {
      * @param bookToBeDeleted
      * 
      * @return the deleted {@code Book}
+     * @throws SessionExpiredException if the session of the user has
+     * expired
      */
     public Book deleteBookFromDb(Book bookToBeDeleted) ;
 
     /**
-     * This method inserts a complete review to the database.
+     * This method inserts the last review of the book to the database.
      *
      * @param reviewToBeAdded
      * 
-     * @return the {@code Review} you added to the database.
+     * @return the reviewed {@code Book} with its new rating, or null if the
+     * book was not found or already reviewed by the user.
+     * @throws SessionExpiredException if the session of the user has
+     * expired
      */
-    public Review addReviewToDb(Book reviewToBeAdded) ;
+    public Book addReviewToDb(Book reviewToBeAdded) ;
     
     /**
      * This creates a new user in the database.
@@ -71,12 +152,14 @@ public interface BooksDbInterface {
      * @param userToBeAdded
      * 
      * @return the created {@code user}
+     * @throws IllegalArgumentException if the username is taken
      */
     public User createAccToDb(User userToBeAdded) ;
 
     /**
      * This method queries the database to check if an user already exists with 
-     * the same username
+     * the same username. It is called as the username is typed, so
+     * implementations should answer from memory when they can.
      *
      * @param user
      * 
@@ -84,6 +167,17 @@ public interface BooksDbInterface {
      */
     public boolean isUsernameAvailable(User user) ;
 
+    /**
+     * This method checks if no book in the database has the isbn, with or
+     * without hyphens. It is called as the isbn is typed, so implementations
+     * should answer from memory when they can.
+     *
+     * @param isbn
+     * 
+     * @return a {@code boolean} if the isbn is available or not
+     */
+    public boolean isIsbnAvailable(String isbn) ;
+
     /**
      * This method queries the database to check if the user exists
      * in the database and the password is correct.
@@ -109,11 +203,24 @@ public interface BooksDbInterface {
      * @param bookToBeReviewed
      * 
      * @return a {@code boolean} if the book has previously been reviewed or not
+     * @throws SessionExpiredException if the session of the user has
+     * expired
      */
     public boolean isBookReviewedByUser(Book bookToBeReviewed) ;
     
+    /**
+     * This method loads the reviews of a book. Books returned by the list and
+     * search methods only carry their number of reviews.
+     *
+     * @param book
+     * 
+     * @return a {@code List<Review>} with the reviews of the book.
+     */
+    public List<Review> getReviewsOfBook(Book book) ;
+
      /**
-     * This method queries the database by searching books by title.
+     * This method queries the database by searching books with a word in the
+     * title that starts with the given text.
      *
      * @param title
      * 
@@ -122,7 +229,8 @@ public interface BooksDbInterface {
     public List<Book> searchBooksByTitle(String title) ;
 
     /**
-     * This method queries the database by searching books by isbn.
+     * This method queries the database by searching books with an isbn that
+     * starts with the given text.
      *
      * @param isbn
      * 
@@ -131,7 +239,8 @@ public interface BooksDbInterface {
     public List<Book> searchBooksByISBN(String isbn) ;
 
     /**
-     * This method queries the database by searching books by auhtor.
+     * This method queries the database by searching books with a word in an
+     * author name that starts with the given text.
      *
      * @param author
      * 
@@ -139,6 +248,16 @@ public interface BooksDbInterface {
      */
     public List<Book> searchBooksByAuthor(String author) ;
 
+    /**
+     * This method queries the database by searching books by words in the
+     * title or the author names. The best matches come first.
+     *
+     * @param keywords
+     * 
+     * @return a {@code List<Book>} with the returned book results.
+     */
+    public List<Book> searchBooksByKeywords(String keywords) ;
+
     /**
      * This method queries the database by searching books by the rating.
      * Max and min represent the interval the rating should be between.
@@ -158,4 +277,29 @@ public interface BooksDbInterface {
      * @return a {@code List<Book>} with the returned book results.
      */
     public List<Book> searchBooksByGenre(String genre) ;
+
+    /**
+     * This method searches for books matching every criterion set in the
+     * query, in one query to the database.
+     *
+     * @param query
+     * 
+     * @return a {@code List<Book>} with the returned book results, sorted
+     * and limited as the query says.
+     */
+    public List<Book> searchBooks(BookQuery query) ;
+
+    /**
+     * This method gets the books for a search as you type, with a word in the
+     * title or an author name, or the isbn, starting with the given text.
+     * It is called on every pause in the typing, so implementations should
+     * answer from memory when they can.
+     *
+     * @param prefix
+     * @param mode Title, Author or ISBN, other modes find nothing
+     * @param limit
+     * 
+     * @return a {@code List<Book>} with at most limit books.
+     */
+    public List<Book> suggestBooks(String prefix, SearchMode mode, int limit) ;
 }
\ No newline at end of file
@@ -0,0 +1,497 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.bson.types.ObjectId;
+
+/**
+ * A BooksDbInterface that keeps recently read books in memory in front of
+ * another BooksDbInterface. Pages of the book list, search results and the
+ * reviews of a book are answered from the cache when possible, and the write
+ * methods keep the cache in step with the database. Cached pages and searches
+ * expire after a few minutes, so changes by other clients show up even when
+ * no change stream reports them.
+ *
+ * The type-ahead suggestions are answered from a prefix index of the search
+ * keys of every book, loaded on a background thread after login and kept up
+ * to date by the writes and the change stream, so typing only reaches the
+ * server for the suggested books that are not cached. Until the index is
+ * loaded the suggestions come from the server.
+ *
+ * @author Umar A & Rabi S
+ */
+public class CachedBooksDb implements BooksDbInterface {
+
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_PAGES = 256;
+    private static final long PAGE_TTL_MILLIS = 5 * 60 * 1000;
+    private static final long SEARCH_TTL_MILLIS = 5 * 60 * 1000;
+    private static final int MAX_SEARCHES = 256;
+    private static final int MAX_SEARCH_BOOKS = 50000;
+
+    private final BooksDbInterface booksDb;
+    private final BookCache cache;
+    private final Map<String, CachedPage> pages;
+    private final SearchCache searches;
+    private final PrefixIndex prefixIndex;
+    private final ThreadPoolExecutor indexLoader;
+
+    public CachedBooksDb(BooksDbInterface booksDb) {
+        this(booksDb, DEFAULT_MAX_BYTES);
+    }
+
+    public CachedBooksDb(BooksDbInterface booksDb, long maxBytes) {
+        this.booksDb = booksDb;
+        this.cache = new BookCache(maxBytes);
+        this.pages = new LinkedHashMap<String, CachedPage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPage> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+        this.searches = new SearchCache(SEARCH_TTL_MILLIS, MAX_SEARCHES, MAX_SEARCH_BOOKS);
+        this.prefixIndex = new PrefixIndex();
+        // a load asked for while one is waiting would read the same books
+        this.indexLoader = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(1), runnable -> {
+                    Thread thread = new Thread(runnable, "booksdb-prefix-index");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        this.indexLoader.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the cache, to read its hit and miss counters.
+     *
+     * @return the {@code BookCache} used by this BooksDb
+     */
+    public BookCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Get the search cache, to read its hit and miss counters.
+     *
+     * @return the {@code SearchCache} used by this BooksDb
+     */
+    public SearchCache getSearchCache() {
+        return searches;
+    }
+
+    /**
+     * Get the prefix index the suggestions are answered from.
+     *
+     * @return the {@code PrefixIndex} used by this BooksDb
+     */
+    public PrefixIndex getPrefixIndex() {
+        return prefixIndex;
+    }
+
+    @Override
+    public void loginAsGuest() {
+        booksDb.loginAsGuest();
+        if (!prefixIndex.isLoaded()) {
+            loadPrefixIndexLater();
+        }
+    }
+
+    @Override
+    public User loginAsUser(User user) {
+        User loggedIn = booksDb.loginAsUser(user);
+        if (loggedIn != null && !prefixIndex.isLoaded()) {
+            loadPrefixIndexLater();
+        }
+        return loggedIn;
+    }
+
+    @Override
+    public void watchBooks(BookChangeListener listener) {
+        booksDb.watchBooks(new BookChangeListener() {
+            @Override
+            public void bookChanged(Book book) {
+                // a book that is not cached may be a new one on a cached page
+                if (!cache.contains(book.getBId())) {
+                    clearPages();
+                }
+                // its reviews may have changed too
+                cache.invalidate(book.getBId());
+                cache.putBook(book);
+                searches.bookChanged(book);
+                prefixIndex.putBook(book);
+                listener.bookChanged(book);
+            }
+
+            @Override
+            public void bookRemoved(ObjectId bookId) {
+                clearPages();
+                cache.invalidate(bookId);
+                searches.bookRemoved(bookId);
+                prefixIndex.removeBook(bookId);
+                listener.bookRemoved(bookId);
+            }
+
+            @Override
+            public void booksResynced() {
+                clear();
+                loadPrefixIndexLater();
+                listener.booksResynced();
+            }
+        });
+    }
+
+    @Override
+    public void disconnect() {
+        clear();
+        booksDb.disconnect();
+    }
+
+    @Override
+    public List<Book> getTheBooks() {
+        return cacheBooks(booksDb.getTheBooks());
+    }
+
+    /**
+     * Get a page of the books. The first page is always read from the
+     * database, since asking for it is how the user refreshes the list.
+     */
+    @Override
+    public List<Book> getTheBooks(ObjectId afterId, int pageSize) {
+        String pageKey = afterId + "/" + pageSize;
+
+        List<Book> cached = afterId == null ? null : getCachedPage(pageKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Book> page = cacheBooks(booksDb.getTheBooks(afterId, pageSize));
+
+        List<ObjectId> pageIds = new ArrayList();
+        for (int i = 0; i < page.size(); i++) {
+            pageIds.add(page.get(i).getBId());
+        }
+        synchronized (pages) {
+            pages.put(pageKey, new CachedPage(pageIds, System.currentTimeMillis()));
+        }
+        return page;
+    }
+
+    @Override
+    public List<Book> getBooksById(List<ObjectId> bookIds) {
+        Map<ObjectId, Book> found = new HashMap();
+        List<ObjectId> missing = new ArrayList();
+        for (int i = 0; i < bookIds.size(); i++) {
+            Book book = cache.getBook(bookIds.get(i));
+            if (book != null) {
+                found.put(book.getBId(), book);
+            } else {
+                missing.add(bookIds.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<Book> fetched = cacheBooks(booksDb.getBooksById(missing));
+            for (int i = 0; i < fetched.size(); i++) {
+                found.put(fetched.get(i).getBId(), fetched.get(i));
+            }
+        }
+
+        List<Book> books = new ArrayList();
+        for (int i = 0; i < bookIds.size(); i++) {
+            Book book = found.get(bookIds.get(i));
+            if (book != null) {
+                books.add(book);
+            }
+        }
+        return books;
+    }
+
+    @Override
+    public void forEachBookKeys(BookKeysConsumer consumer) {
+        booksDb.forEachBookKeys(consumer);
+    }
+
+    @Override
+    public Book addBookToDb(Book bookToBeAdded) {
+        Book added = booksDb.addBookToDb(bookToBeAdded);
+        if (added != null) {
+            clearPages();
+            cache.putBook(added);
+            searches.bookChanged(added);
+            prefixIndex.putBook(added);
+        }
+        return added;
+    }
+
+    @Override
+    public ImportReport importBooks(File feed) throws IOException {
+        ImportReport report;
+        try {
+            report = booksDb.importBooks(feed);
+        } finally {
+            // even a failed import may have added books anywhere, the
+            // suggestions come from the server until the index is loaded
+            clearPages();
+            searches.clear();
+            prefixIndex.clear();
+            loadPrefixIndexLater();
+        }
+        return report;
+    }
+
+    @Override
+    public ExportReport exportBooks(File target) throws IOException {
+        return booksDb.exportBooks(target);
+    }
+
+    @Override
+    public Book deleteBookFromDb(Book bookToBeDeleted) {
+        Book deleted = booksDb.deleteBookFromDb(bookToBeDeleted);
+        if (deleted != null) {
+            clearPages();
+            cache.invalidate(deleted.getBId());
+            searches.bookRemoved(deleted.getBId());
+            prefixIndex.removeBook(deleted.getBId());
+        }
+        return deleted;
+    }
+
+    @Override
+    public Book addReviewToDb(Book reviewToBeAdded) {
+        // the dialog changed the cached book itself, so the book and the
+        // searches holding it are dropped even if the review is not added
+        cache.invalidate(reviewToBeAdded.getBId());
+        searches.bookRemoved(reviewToBeAdded.getBId());
+
+        Book reviewed = booksDb.addReviewToDb(reviewToBeAdded);
+        if (reviewed != null) {
+            cache.putBook(reviewed);
+            searches.bookChanged(reviewed);
+            prefixIndex.putBook(reviewed);
+        }
+        return reviewed;
+    }
+
+    @Override
+    public User createAccToDb(User userToBeAdded) {
+        return booksDb.createAccToDb(userToBeAdded);
+    }
+
+    @Override
+    public boolean isUsernameAvailable(User user) {
+        return booksDb.isUsernameAvailable(user);
+    }
+
+    @Override
+    public boolean isIsbnAvailable(String isbn) {
+        return booksDb.isIsbnAvailable(isbn);
+    }
+
+    @Override
+    public boolean isUser(User user) {
+        return booksDb.isUser(user);
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return booksDb.isLoggedIn();
+    }
+
+    @Override
+    public boolean isBookReviewedByUser(Book bookToBeReviewed) {
+        return booksDb.isBookReviewedByUser(bookToBeReviewed);
+    }
+
+    @Override
+    public List<Review> getReviewsOfBook(Book book) {
+        List<Review> cached = cache.getReviews(book.getBId());
+        if (cached != null) {
+            return cached;
+        }
+
+        List<Review> reviews = booksDb.getReviewsOfBook(book);
+        cache.putBook(book);
+        cache.putReviews(book.getBId(), reviews);
+        return reviews;
+    }
+
+    @Override
+    public List<Book> searchBooksByTitle(String title) {
+        List<Book> cached = searches.get(SearchCache.keyOf(SearchMode.Title, title));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByTitle(title));
+        searches.put(SearchMode.Title, title, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooksByISBN(String isbn) {
+        List<Book> cached = searches.get(SearchCache.keyOf(SearchMode.ISBN, isbn));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByISBN(isbn));
+        searches.put(SearchMode.ISBN, isbn, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooksByAuthor(String author) {
+        List<Book> cached = searches.get(SearchCache.keyOf(SearchMode.Author, author));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByAuthor(author));
+        searches.put(SearchMode.Author, author, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooksByKeywords(String keywords) {
+        List<Book> cached = searches.get(SearchCache.keyOf(SearchMode.Keywords, keywords));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByKeywords(keywords));
+        searches.put(SearchMode.Keywords, keywords, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooksByRating(double min, double max) {
+        List<Book> cached = searches.get(SearchCache.keyOf(min, max));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByRating(min, max));
+        searches.put(min, max, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooksByGenre(String genre) {
+        List<Book> cached = searches.get(SearchCache.keyOf(SearchMode.Genre, genre));
+        if (cached != null) {
+            return cached;
+        }
+
+        long version = searches.getVersion();
+        List<Book> result = cacheBooks(booksDb.searchBooksByGenre(genre));
+        searches.put(SearchMode.Genre, genre, result, version);
+        return result;
+    }
+
+    @Override
+    public List<Book> searchBooks(BookQuery query) {
+        return cacheBooks(booksDb.searchBooks(query));
+    }
+
+    @Override
+    public List<Book> suggestBooks(String prefix, SearchMode mode, int limit) {
+        if (prefixIndex.isLoaded()) {
+            return getBooksById(prefixIndex.lookup(prefix, mode, limit));
+        }
+        return cacheBooks(booksDb.suggestBooks(prefix, mode, limit));
+    }
+
+    /**
+     * Loads the search keys of every book into the prefix index on the
+     * loader thread, off the login and import paths.
+     */
+    private void loadPrefixIndexLater() {
+        indexLoader.execute(() -> {
+            prefixIndex.beginLoad();
+            try {
+                booksDb.forEachBookKeys(prefixIndex);
+                prefixIndex.finishLoad();
+            } catch (RuntimeException e) {
+                // the suggestions keep coming from the server
+                prefixIndex.abortLoad();
+            }
+        });
+    }
+
+    /**
+     * Get a page from the cache, only if it has not expired and every book
+     * of the page is still cached.
+     */
+    private List<Book> getCachedPage(String pageKey) {
+        CachedPage cachedPage;
+        synchronized (pages) {
+            cachedPage = pages.get(pageKey);
+            if (cachedPage != null && System.currentTimeMillis() - cachedPage.cachedAt > PAGE_TTL_MILLIS) {
+                pages.remove(pageKey);
+                cachedPage = null;
+            }
+        }
+        if (cachedPage == null) {
+            return null;
+        }
+
+        List<ObjectId> pageIds = cachedPage.bookIds;
+
+        List<Book> page = new ArrayList();
+        for (int i = 0; i < pageIds.size(); i++) {
+            Book book = cache.getBook(pageIds.get(i));
+            if (book == null) {
+                return null;
+            }
+            page.add(book);
+        }
+        return page;
+    }
+
+    /**
+     * Fresh results from the database replace the cached books, so later
+     * pages and reviews see the same books as the search did.
+     */
+    private List<Book> cacheBooks(List<Book> books) {
+        for (int i = 0; i < books.size(); i++) {
+            cache.putBook(books.get(i));
+        }
+        return books;
+    }
+
+    private void clearPages() {
+        synchronized (pages) {
+            pages.clear();
+        }
+    }
+
+    private void clear() {
+        clearPages();
+        cache.clear();
+        searches.clear();
+        prefixIndex.clear();
+    }
+
+    private static class CachedPage {
+
+        private final List<ObjectId> bookIds;
+        private final long cachedAt;
+
+        private CachedPage(List<ObjectId> bookIds, long cachedAt) {
+            this.bookIds = bookIds;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
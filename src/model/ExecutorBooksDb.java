@@ -0,0 +1,217 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.bson.types.ObjectId;
+
+/**
+ * A {@code CompletableFuture} adapter of {@code BooksDbInterface}, backed by
+ * an executor. Every method returns at once with a future that is completed
+ * with the result of the call, or exceptionally with its error, so the
+ * caller, usually the JavaFX thread, can compose calls without waiting.
+ *
+ * The database calls still block: each one runs the blocking driver on a
+ * thread of a bounded pool of daemon threads and holds that thread for the
+ * whole round trip. At most as many calls as there are threads are in flight,
+ * which is why the pool is as large as the connection pool. Calls beyond that
+ * wait in a bounded queue, and a call that does not fit in the queue fails
+ * its future with a {@code RejectedExecutionException} instead of piling up.
+ *
+ * @author Umar A & Rabi S
+ */
+public class ExecutorBooksDb {
+
+    private static final int DEFAULT_THREADS = 20;
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    private final BooksDbInterface booksDb;
+    private final ThreadPoolExecutor executor;
+
+    public ExecutorBooksDb(BooksDbInterface booksDb) {
+        this(booksDb, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+    }
+
+    public ExecutorBooksDb(BooksDbInterface booksDb, int nrOfThreads, int queueSize) {
+        this.booksDb = booksDb;
+        this.executor = new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(queueSize), new DaemonThreadFactory());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the blocking BooksDbInterface the calls are made on.
+     *
+     * @return the {@code BooksDbInterface}
+     */
+    public BooksDbInterface getBooksDb() {
+        return booksDb;
+    }
+
+    public CompletableFuture<Void> loginAsGuest() {
+        return run(() -> {
+            booksDb.loginAsGuest();
+            return null;
+        });
+    }
+
+    public CompletableFuture<User> loginAsUser(User user) {
+        return run(() -> booksDb.loginAsUser(user));
+    }
+
+    /**
+     * Close the connection. Calls already queued are still made, on a closed
+     * connection they fail.
+     *
+     * @return a {@code CompletableFuture} completed when the connection is
+     * closed
+     */
+    public CompletableFuture<Void> disconnect() {
+        return run(() -> {
+            booksDb.disconnect();
+            return null;
+        });
+    }
+
+    public boolean isLoggedIn() {
+        return booksDb.isLoggedIn();
+    }
+
+    public CompletableFuture<List<Book>> getTheBooks() {
+        return run(() -> booksDb.getTheBooks());
+    }
+
+    public CompletableFuture<List<Book>> getTheBooks(ObjectId afterId, int pageSize) {
+        return run(() -> booksDb.getTheBooks(afterId, pageSize));
+    }
+
+    public CompletableFuture<List<Book>> getBooksById(List<ObjectId> bookIds) {
+        return run(() -> booksDb.getBooksById(bookIds));
+    }
+
+    public CompletableFuture<Book> addBookToDb(Book bookToBeAdded) {
+        return run(() -> booksDb.addBookToDb(bookToBeAdded));
+    }
+
+    public CompletableFuture<ImportReport> importBooks(File feed) {
+        return run(() -> {
+            try {
+                return booksDb.importBooks(feed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<ExportReport> exportBooks(File target) {
+        return run(() -> {
+            try {
+                return booksDb.exportBooks(target);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    public CompletableFuture<Book> deleteBookFromDb(Book bookToBeDeleted) {
+        return run(() -> booksDb.deleteBookFromDb(bookToBeDeleted));
+    }
+
+    public CompletableFuture<Book> addReviewToDb(Book reviewToBeAdded) {
+        return run(() -> booksDb.addReviewToDb(reviewToBeAdded));
+    }
+
+    public CompletableFuture<User> createAccToDb(User userToBeAdded) {
+        return run(() -> booksDb.createAccToDb(userToBeAdded));
+    }
+
+    public CompletableFuture<Boolean> isUsernameAvailable(User user) {
+        return run(() -> booksDb.isUsernameAvailable(user));
+    }
+
+    public CompletableFuture<Boolean> isIsbnAvailable(String isbn) {
+        return run(() -> booksDb.isIsbnAvailable(isbn));
+    }
+
+    public CompletableFuture<Boolean> isUser(User user) {
+        return run(() -> booksDb.isUser(user));
+    }
+
+    public CompletableFuture<Boolean> isBookReviewedByUser(Book bookToBeReviewed) {
+        return run(() -> booksDb.isBookReviewedByUser(bookToBeReviewed));
+    }
+
+    public CompletableFuture<List<Review>> getReviewsOfBook(Book book) {
+        return run(() -> booksDb.getReviewsOfBook(book));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByTitle(String title) {
+        return run(() -> booksDb.searchBooksByTitle(title));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByISBN(String isbn) {
+        return run(() -> booksDb.searchBooksByISBN(isbn));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByAuthor(String author) {
+        return run(() -> booksDb.searchBooksByAuthor(author));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByKeywords(String keywords) {
+        return run(() -> booksDb.searchBooksByKeywords(keywords));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByRating(double min, double max) {
+        return run(() -> booksDb.searchBooksByRating(min, max));
+    }
+
+    public CompletableFuture<List<Book>> searchBooksByGenre(String genre) {
+        return run(() -> booksDb.searchBooksByGenre(genre));
+    }
+
+    public CompletableFuture<List<Book>> searchBooks(BookQuery query) {
+        return run(() -> booksDb.searchBooks(query));
+    }
+
+    public CompletableFuture<List<Book>> suggestBooks(String prefix, SearchMode mode, int limit) {
+        return run(() -> booksDb.suggestBooks(prefix, mode, limit));
+    }
+
+    /**
+     * Stop accepting calls. Calls already queued are left to finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> run(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNr = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "books-db-executor-" + threadNr.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
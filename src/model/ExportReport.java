@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * The outcome of exporting the books to a feed.
+ *
+ * @author Umar A & Rabi S
+ */
+public class ExportReport {
+
+    private final long booksWritten;
+    private final long bytesWritten;
+    private final long elapsedMillis;
+
+    public ExportReport(long booksWritten, long bytesWritten, long elapsedMillis) {
+        this.booksWritten = booksWritten;
+        this.bytesWritten = bytesWritten;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getBooksWritten() {
+        return booksWritten;
+    }
+
+    /**
+     * @return a {@code long} with the size of the written file, after gzip if
+     * it was gzipped
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? booksWritten : booksWritten * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Wrote %d books (%.1f MB) in %.1f s (%.0f rows/s)",
+                booksWritten, bytesWritten / (1024.0 * 1024.0), elapsedMillis / 1000.0, getRowsPerSecond());
+    }
+}
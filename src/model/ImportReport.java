@@ -0,0 +1,89 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of importing a feed of books.
+ *
+ * @author Umar A & Rabi S
+ */
+public class ImportReport {
+
+    private final long rowsRead;
+    private final long rowsInserted;
+    private final long rowsRejected;
+    private final long duplicates;
+    private final long resumedAtLine;
+    private final long elapsedMillis;
+    private final List<String> errors;
+
+    public ImportReport(long rowsRead, long rowsInserted, long rowsRejected, long duplicates, long resumedAtLine, long elapsedMillis, List<String> errors) {
+        this.rowsRead = rowsRead;
+        this.rowsInserted = rowsInserted;
+        this.rowsRejected = rowsRejected;
+        this.duplicates = duplicates;
+        this.resumedAtLine = resumedAtLine;
+        this.elapsedMillis = elapsedMillis;
+        this.errors = new ArrayList(errors);
+    }
+
+    /**
+     * @return a {@code long} with the number of rows read by this import,
+     * not counting the lines skipped when it was resumed
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsInserted() {
+        return rowsInserted;
+    }
+
+    /**
+     * @return a {@code long} with the number of rows that were not valid
+     * books
+     */
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    /**
+     * @return a {@code long} with the number of books that were already in
+     * the database
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * @return a {@code long} with the number of lines skipped because an
+     * earlier import had already written them, 0 if it was not resumed
+     */
+    public long getResumedAtLine() {
+        return resumedAtLine;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? rowsRead : rowsRead * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return a {@code List<String>} with the first errors of the rejected
+     * rows, each starting with its line number
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Read %d rows in %.1f s (%.0f rows/s)%nInserted: %d%nAlready in the database: %d%nRejected: %d",
+                rowsRead, elapsedMillis / 1000.0, getRowsPerSecond(), rowsInserted, duplicates, rowsRejected)
+                + (resumedAtLine > 0 ? "\nResumed after line " + resumedAtLine : "");
+    }
+}
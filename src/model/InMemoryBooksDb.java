@@ -0,0 +1,891 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.bson.types.ObjectId;
+
+/**
+ * A BooksDbInterface that holds the whole catalogue in memory, to run the
+ * client, benchmarks and tests without a MongoDB server, or to answer reads
+ * from a copy of a database.
+ *
+ * The searches are served by secondary indexes kept next to the books:
+ * <ul>
+ * <li>a hash index from isbn to book,</li>
+ * <li>a set of books per genre,</li>
+ * <li>the ratings in a sorted array, searched for a range with two binary
+ * searches,</li>
+ * <li>trigram indexes of the titles and of the author names, which narrow a
+ * word prefix or a keyword to the books holding all of its trigrams before
+ * the text is compared.</li>
+ * </ul>
+ * The searches find the same books as {@code BooksDb}, except that keywords
+ * are matched as whole words without the stemming of a text index.
+ *
+ * Any number of threads may read at the same time, a write waits for the
+ * readers and holds the others off. The books handed out are copies, so a
+ * caller changing them does not change the catalogue.
+ *
+ * @author Umar A & Rabi S
+ */
+public class InMemoryBooksDb implements BooksDbInterface {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int MAX_IMPORT_ERRORS = 100;
+
+    private final ReentrantReadWriteLock lock;
+
+    // the books, without their reviews, in id order for the pages
+    private final TreeMap<ObjectId, Book> books;
+    private final Map<ObjectId, List<Review>> reviews;
+    private final Map<String, ObjectId> isbnIndex;
+    private final EnumMap<Genre, TreeSet<ObjectId>> genreIndex;
+    private final RatingIndex ratingIndex;
+    private final Map<String, Set<ObjectId>> titleGrams;
+    private final Map<String, Set<ObjectId>> authorGrams;
+    private final Map<String, User> users;
+
+    private volatile User currentUser;
+    private volatile BookChangeListener listener;
+
+    public InMemoryBooksDb() {
+        this.lock = new ReentrantReadWriteLock();
+        this.books = new TreeMap();
+        this.reviews = new HashMap();
+        this.isbnIndex = new HashMap();
+        this.genreIndex = new EnumMap(Genre.class);
+        for (Genre genre : Genre.values()) {
+            genreIndex.put(genre, new TreeSet());
+        }
+        this.ratingIndex = new RatingIndex();
+        this.titleGrams = new HashMap();
+        this.authorGrams = new HashMap();
+        this.users = new HashMap();
+    }
+
+    /**
+     * Add books as they are, with their ids, users and the reviews they
+     * carry, the way an import does. Books with an isbn that is already held
+     * are skipped.
+     *
+     * @param newBooks
+     * @return an {@code int} with the number of books added
+     */
+    public int addBooks(List<Book> newBooks) {
+        return insertBooks(newBooks).size();
+    }
+
+    /**
+     * Copy every book and its reviews from another BooksDbInterface, one page
+     * at a time. Books already held with the same isbn are kept. The copy is
+     * a snapshot, later changes to the other database are not followed.
+     *
+     * @param source
+     * @param pageSize
+     * @return a {@code long} with the number of books copied
+     */
+    public long copyFrom(BooksDbInterface source, int pageSize) {
+        long copied = 0;
+        List<Book> page = source.getTheBooks(null, pageSize);
+        while (!page.isEmpty()) {
+            List<Book> withReviews = new ArrayList();
+            for (int i = 0; i < page.size(); i++) {
+                Book book = page.get(i);
+                if (book.getNrOfReviews() > 0) {
+                    List<Review> bookReviews = source.getReviewsOfBook(book);
+                    book = summaryOf(book);
+                    for (int j = 0; j < bookReviews.size(); j++) {
+                        book.addReview(bookReviews.get(j));
+                    }
+                }
+                withReviews.add(book);
+            }
+            copied += insertBooks(withReviews).size();
+            page = page.size() < pageSize ? new ArrayList() : source.getTheBooks(page.get(page.size() - 1).getBId(), pageSize);
+        }
+        return copied;
+    }
+
+    @Override
+    public void loginAsGuest() {
+        currentUser = null;
+    }
+
+    @Override
+    public User loginAsUser(User user) {
+        if (!isUser(user)) {
+            return null;
+        }
+        currentUser = new User(user.getUsername());
+        return currentUser;
+    }
+
+    @Override
+    public void disconnect() {
+        listener = null;
+    }
+
+    @Override
+    public void watchBooks(BookChangeListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public List<Book> getTheBooks() {
+        lock.readLock().lock();
+        try {
+            return copiesOf(books.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> getTheBooks(ObjectId afterId, int pageSize) {
+        lock.readLock().lock();
+        try {
+            Collection<Book> after = afterId == null ? books.values() : books.tailMap(afterId, false).values();
+
+            List<Book> page = new ArrayList();
+            for (Book book : after) {
+                if (page.size() == pageSize) {
+                    break;
+                }
+                page.add(summaryOf(book));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> getBooksById(List<ObjectId> bookIds) {
+        lock.readLock().lock();
+        try {
+            List<Book> found = new ArrayList();
+            for (int i = 0; i < bookIds.size(); i++) {
+                Book book = books.get(bookIds.get(i));
+                if (book != null) {
+                    found.add(summaryOf(book));
+                }
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachBookKeys(BookKeysConsumer consumer) {
+        lock.readLock().lock();
+        try {
+            for (Book book : books.values()) {
+                consumer.accept(book.getBId(), SearchKeys.keysOf(book.getTitle()), SearchKeys.keysOfAuthors(book.getAuthors()), book.getIsbn());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Book addBookToDb(Book bookToBeAdded) {
+        User addedBy = new User(requireUser().getUsername());
+        Book addedBook = new Book(new ObjectId(), bookToBeAdded.getTitle(), SearchKeys.normalizeIsbn(bookToBeAdded.getIsbn()),
+                bookToBeAdded.getPublished(), bookToBeAdded.getGenre(), bookToBeAdded.getRating(), addedBy);
+
+        for (int i = 0; i < bookToBeAdded.getAuthors().size(); i++) {
+            Author author = bookToBeAdded.getAuthors().get(i);
+            addedBook.addAuthor(new Author(author.getName(), author.getDateOfBirth(), addedBy));
+        }
+
+        if (insertBooks(Collections.singletonList(addedBook)).isEmpty()) {
+            throw new IllegalArgumentException("A book with the isbn " + addedBook.getIsbn() + " already exists");
+        }
+        return summaryOf(addedBook);
+    }
+
+    /**
+     * Import a feed in one pass. Unlike {@code BooksDb} no checkpoint is kept,
+     * since the books do not outlive the process; the books read before an
+     * error stay imported.
+     */
+    @Override
+    public ImportReport importBooks(File feed) throws IOException {
+        long startTime = System.currentTimeMillis();
+        long rowsRead = 0;
+        long rejected = 0;
+        long inserted = 0;
+        long duplicates = 0;
+        List<String> errors = new ArrayList();
+
+        try (BufferedReader reader = BookImporter.openReader(feed.toPath())) {
+            BookFeedReader feedReader = new BookFeedReader(reader, BookFeedReader.formatOf(feed.getName()), new User(requireUser().getUsername()));
+
+            List<Book> batch = new ArrayList(IMPORT_BATCH_SIZE);
+            BookFeedReader.Row row = feedReader.next();
+            while (row != null) {
+                rowsRead++;
+                if (row.getBook() != null) {
+                    batch.add(row.getBook());
+                } else {
+                    rejected++;
+                    if (errors.size() < MAX_IMPORT_ERRORS) {
+                        errors.add("Line " + row.getLineNr() + ": " + row.getError());
+                    }
+                }
+                row = feedReader.next();
+
+                if (batch.size() == IMPORT_BATCH_SIZE || (row == null && !batch.isEmpty())) {
+                    int written = insertBooks(batch).size();
+                    inserted += written;
+                    duplicates += batch.size() - written;
+                    batch = new ArrayList(IMPORT_BATCH_SIZE);
+                }
+            }
+        }
+
+        return new ImportReport(rowsRead, inserted, rejected, duplicates, 0, System.currentTimeMillis() - startTime, errors);
+    }
+
+    @Override
+    public ExportReport exportBooks(File target) throws IOException {
+        List<Book> snapshot = new ArrayList();
+
+        lock.readLock().lock();
+        try {
+            for (Book book : books.values()) {
+                Book withReviews = summaryOf(book);
+                List<Review> bookReviews = reviewsOf(book.getBId());
+                for (int i = 0; i < bookReviews.size(); i++) {
+                    withReviews.addReview(bookReviews.get(i));
+                }
+                snapshot.add(withReviews);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return BookExporter.writeFeed(target.toPath(), snapshot.iterator());
+    }
+
+    @Override
+    public Book deleteBookFromDb(Book bookToBeDeleted) {
+        if (!bookToBeDeleted.getUser().getUsername().equals(requireUser().getUsername())) {
+            return null;
+        }
+
+        Book deleted;
+        lock.writeLock().lock();
+        try {
+            deleted = books.remove(bookToBeDeleted.getBId());
+            if (deleted == null) {
+                return null;
+            }
+            reviews.remove(deleted.getBId());
+            unindex(deleted);
+            deleted = summaryOf(deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        BookChangeListener current = listener;
+        if (current != null) {
+            current.bookRemoved(deleted.getBId());
+        }
+        return deleted;
+    }
+
+    @Override
+    public Book addReviewToDb(Book reviewToBeAdded) {
+        // the new review is the last one added to the book by the dialog
+        int lastReview = reviewToBeAdded.getReviews().size() - 1;
+        if (lastReview < 0) {
+            return null;
+        }
+        Review newReview = reviewToBeAdded.getReviews().get(lastReview);
+        String username = requireUser().getUsername();
+
+        Book reviewed;
+        lock.writeLock().lock();
+        try {
+            Book book = books.get(reviewToBeAdded.getBId());
+            if (book == null || isReviewedBy(book.getBId(), username)) {
+                return null;
+            }
+
+            List<Review> bookReviews = reviews.get(book.getBId());
+            if (bookReviews == null) {
+                bookReviews = new ArrayList();
+                reviews.put(book.getBId(), bookReviews);
+            }
+            bookReviews.add(new Review(newReview.getbRating(), newReview.getRevString(), newReview.getDateAdded(), new User(username)));
+
+            double ratingSum = 0.0;
+            for (int i = 0; i < bookReviews.size(); i++) {
+                ratingSum += bookReviews.get(i).getbRating();
+            }
+            ratingIndex.remove(book.getRating(), book.getBId());
+            book.setRating(ratingSum / bookReviews.size());
+            book.setNrOfReviews(bookReviews.size());
+            ratingIndex.add(book.getRating(), book.getBId());
+
+            reviewed = summaryOf(book);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        BookChangeListener current = listener;
+        if (current != null) {
+            current.bookChanged(summaryOf(reviewed));
+        }
+        return reviewed;
+    }
+
+    @Override
+    public User createAccToDb(User userToBeAdded) {
+        // the hash is slow on purpose, so it is made before taking the lock
+        String username = userToBeAdded.getUsername().toLowerCase();
+        User stored = new User(username, PasswordHash.hash(userToBeAdded.getPassword()));
+        lock.writeLock().lock();
+        try {
+            if (users.containsKey(username)) {
+                throw new IllegalArgumentException("The username " + username + " is taken");
+            }
+            users.put(username, stored);
+            return userToBeAdded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isUsernameAvailable(User user) {
+        lock.readLock().lock();
+        try {
+            return !users.containsKey(user.getUsername().toLowerCase());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isIsbnAvailable(String isbn) {
+        lock.readLock().lock();
+        try {
+            return !isbnIndex.containsKey(SearchKeys.normalizeIsbn(isbn));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isUser(User user) {
+        User stored;
+        lock.readLock().lock();
+        try {
+            stored = users.get(user.getUsername());
+        } finally {
+            lock.readLock().unlock();
+        }
+        return stored != null && PasswordHash.matches(user.getPassword(), stored.getPassword());
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return currentUser != null;
+    }
+
+    @Override
+    public boolean isBookReviewedByUser(Book bookToBeReviewed) {
+        lock.readLock().lock();
+        try {
+            return isReviewedBy(bookToBeReviewed.getBId(), requireUser().getUsername());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Review> getReviewsOfBook(Book book) {
+        lock.readLock().lock();
+        try {
+            return new ArrayList(reviewsOf(book.getBId()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> searchBooksByTitle(String title) {
+        BookQuery query = new BookQuery();
+        query.setTitle(title);
+        return searchBooks(query);
+    }
+
+    @Override
+    public List<Book> searchBooksByISBN(String isbn) {
+        BookQuery query = new BookQuery();
+        query.setIsbn(isbn);
+        return searchBooks(query);
+    }
+
+    @Override
+    public List<Book> searchBooksByAuthor(String author) {
+        BookQuery query = new BookQuery();
+        query.setAuthor(author);
+        return searchBooks(query);
+    }
+
+    @Override
+    public List<Book> searchBooksByKeywords(String keywords) {
+        BookQuery query = new BookQuery();
+        query.setKeywords(keywords);
+        return searchBooks(query);
+    }
+
+    @Override
+    public List<Book> searchBooksByRating(double min, double max) {
+        BookQuery query = new BookQuery();
+        query.setMinRating(min);
+        query.setMaxRating(max);
+        return searchBooks(query);
+    }
+
+    @Override
+    public List<Book> searchBooksByGenre(String genre) {
+        BookQuery query = new BookQuery();
+        query.setGenre(Genre.valueOf(genre));
+        return searchBooks(query);
+    }
+
+    /**
+     * Each criterion with an index gives the books that may match it, and
+     * the smallest of these sets is checked against every criterion, the way
+     * a database picks the most selective index.
+     */
+    @Override
+    public List<Book> searchBooks(BookQuery query) {
+        lock.readLock().lock();
+        try {
+            Collection<ObjectId> candidates = null;
+            if (query.getIsbn() != null) {
+                candidates = smaller(candidates, isbnCandidates(query.getIsbn()));
+            }
+            if (query.getGenre() != null) {
+                candidates = smaller(candidates, genreIndex.get(query.getGenre()));
+            }
+            if (query.getMinRating() != null || query.getMaxRating() != null) {
+                double min = query.getMinRating() == null ? Double.NEGATIVE_INFINITY : query.getMinRating();
+                double max = query.getMaxRating() == null ? Double.POSITIVE_INFINITY : query.getMaxRating();
+                candidates = smaller(candidates, ratingIndex.range(min, max));
+            }
+            if (query.getTitle() != null) {
+                candidates = smaller(candidates, gramCandidates(titleGrams, " " + SearchKeys.normalize(query.getTitle())));
+            }
+            if (query.getAuthor() != null) {
+                candidates = smaller(candidates, gramCandidates(authorGrams, " " + SearchKeys.normalize(query.getAuthor())));
+            }
+            if (query.getKeywords() != null) {
+                candidates = smaller(candidates, keywordCandidates(wordsOf(query.getKeywords())));
+            }
+            if (candidates == null) {
+                candidates = books.keySet();
+            }
+
+            List<Book> found = new ArrayList();
+            for (ObjectId id : candidates) {
+                Book book = books.get(id);
+                if (book != null && matches(book, query)) {
+                    found.add(book);
+                }
+            }
+            sort(found, query);
+
+            if (query.getLimit() > 0 && found.size() > query.getLimit()) {
+                found = found.subList(0, query.getLimit());
+            }
+            return copiesOf(found);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> suggestBooks(String prefix, SearchMode mode, int limit) {
+        BookQuery query = new BookQuery();
+        switch (mode) {
+            case Title:
+                query.setTitle(prefix);
+                break;
+            case Author:
+                query.setAuthor(prefix);
+                break;
+            case ISBN:
+                query.setIsbn(prefix);
+                break;
+            default:
+                return new ArrayList();
+        }
+        if (query.isEmpty()) {
+            return new ArrayList();
+        }
+        query.setLimit(limit);
+        return searchBooks(query);
+    }
+
+    /**
+     * Add books that are not held yet, with the reviews they carry, and tell
+     * the listener.
+     *
+     * @return the books added, less those whose isbn was taken
+     */
+    private List<Book> insertBooks(List<Book> newBooks) {
+        List<Book> added = new ArrayList();
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < newBooks.size(); i++) {
+                Book book = newBooks.get(i);
+                if (isbnIndex.containsKey(SearchKeys.normalizeIsbn(book.getIsbn())) || books.containsKey(book.getBId())) {
+                    continue;
+                }
+                Book stored = summaryOf(book);
+                stored.setNrOfReviews(book.getReviews().size());
+                if (!book.getReviews().isEmpty()) {
+                    reviews.put(book.getBId(), new ArrayList(book.getReviews()));
+                }
+                books.put(stored.getBId(), stored);
+                index(stored);
+                added.add(summaryOf(stored));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        BookChangeListener current = listener;
+        if (current != null) {
+            for (int i = 0; i < added.size(); i++) {
+                current.bookChanged(summaryOf(added.get(i)));
+            }
+        }
+        return added;
+    }
+
+    private void index(Book book) {
+        isbnIndex.put(SearchKeys.normalizeIsbn(book.getIsbn()), book.getBId());
+        genreIndex.get(book.getGenre()).add(book.getBId());
+        ratingIndex.add(book.getRating(), book.getBId());
+        addGrams(titleGrams, paddedTitle(book), book.getBId());
+        addGrams(authorGrams, paddedAuthors(book), book.getBId());
+    }
+
+    private void unindex(Book book) {
+        isbnIndex.remove(SearchKeys.normalizeIsbn(book.getIsbn()));
+        genreIndex.get(book.getGenre()).remove(book.getBId());
+        ratingIndex.remove(book.getRating(), book.getBId());
+        removeGrams(titleGrams, paddedTitle(book), book.getBId());
+        removeGrams(authorGrams, paddedAuthors(book), book.getBId());
+    }
+
+    private boolean matches(Book book, BookQuery query) {
+        if (query.getIsbn() != null && !SearchKeys.normalizeIsbn(book.getIsbn()).startsWith(SearchKeys.normalizeIsbn(query.getIsbn()))) {
+            return false;
+        }
+        if (query.getGenre() != null && book.getGenre() != query.getGenre()) {
+            return false;
+        }
+        if (query.getMinRating() != null && book.getRating() < query.getMinRating()) {
+            return false;
+        }
+        if (query.getMaxRating() != null && book.getRating() > query.getMaxRating()) {
+            return false;
+        }
+        if (query.getTitle() != null && !paddedTitle(book).contains(" " + SearchKeys.normalize(query.getTitle()))) {
+            return false;
+        }
+        if (query.getAuthor() != null && !paddedAuthors(book).contains(" " + SearchKeys.normalize(query.getAuthor()))) {
+            return false;
+        }
+        return query.getKeywords() == null || keywordScore(book, wordsOf(query.getKeywords())) > 0;
+    }
+
+    private void sort(List<Book> found, BookQuery query) {
+        Comparator<Book> order;
+        if (query.getSortField() != null) {
+            switch (query.getSortField()) {
+                case Title:
+                    order = Comparator.comparing(Book::getTitle);
+                    break;
+                case Rating:
+                    order = Comparator.comparingDouble(Book::getRating);
+                    break;
+                default:
+                    order = Comparator.comparing(Book::getPublished);
+            }
+            if (query.isDescending()) {
+                order = order.reversed();
+            }
+        } else if (query.getKeywords() != null) {
+            // the best matches first, as with a text index
+            List<String> words = wordsOf(query.getKeywords());
+            order = Comparator.comparingInt((Book book) -> keywordScore(book, words)).reversed();
+        } else {
+            order = Comparator.comparing(Book::getBId);
+        }
+        Collections.sort(found, order.thenComparing(Book::getBId));
+    }
+
+    /**
+     * A full isbn is looked up in the hash index, a shorter prefix has to be
+     * checked against every book.
+     */
+    private Collection<ObjectId> isbnCandidates(String isbn) {
+        ObjectId id = isbnIndex.get(SearchKeys.normalizeIsbn(isbn));
+        if (id != null) {
+            return Collections.singletonList(id);
+        }
+        return null;
+    }
+
+    /**
+     * Get the books holding every trigram of the text, or null when the
+     * text is too short to have a trigram.
+     */
+    private Collection<ObjectId> gramCandidates(Map<String, Set<ObjectId>> grams, String text) {
+        if (text.length() < GRAM_LENGTH) {
+            return null;
+        }
+
+        List<Set<ObjectId>> postings = new ArrayList();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            Set<ObjectId> posting = grams.get(text.substring(i, i + GRAM_LENGTH));
+            if (posting == null) {
+                return Collections.emptyList();
+            }
+            postings.add(posting);
+        }
+
+        // intersect starting with the rarest trigram
+        Collections.sort(postings, Comparator.comparingInt(Set::size));
+        Set<ObjectId> found = new HashSet(postings.get(0));
+        for (int i = 1; i < postings.size() && !found.isEmpty(); i++) {
+            found.retainAll(postings.get(i));
+        }
+        return found;
+    }
+
+    private Collection<ObjectId> keywordCandidates(List<String> words) {
+        Set<ObjectId> found = new HashSet();
+        for (int i = 0; i < words.size(); i++) {
+            String word = " " + words.get(i) + " ";
+            found.addAll(gramCandidates(titleGrams, word));
+            found.addAll(gramCandidates(authorGrams, word));
+        }
+        return found;
+    }
+
+    /**
+     * Get the number of keywords that are a whole word of the title or an
+     * author name.
+     */
+    private static int keywordScore(Book book, List<String> words) {
+        String title = paddedTitle(book);
+        String authors = paddedAuthors(book);
+
+        int score = 0;
+        for (int i = 0; i < words.size(); i++) {
+            String word = " " + words.get(i) + " ";
+            if (title.contains(word) || authors.contains(word)) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    private static List<String> wordsOf(String keywords) {
+        String normalized = SearchKeys.normalize(keywords);
+        return normalized.isEmpty() ? new ArrayList() : Arrays.asList(normalized.split(" "));
+    }
+
+    /**
+     * The normalized title between spaces, so a word prefix is the text
+     * after a space and a whole word is the text between two.
+     */
+    private static String paddedTitle(Book book) {
+        return " " + SearchKeys.normalize(book.getTitle()) + " ";
+    }
+
+    private static String paddedAuthors(Book book) {
+        StringBuilder padded = new StringBuilder(" ");
+        for (int i = 0; i < book.getAuthors().size(); i++) {
+            padded.append(SearchKeys.normalize(book.getAuthors().get(i).getName())).append(" | ");
+        }
+        return padded.toString();
+    }
+
+    private static void addGrams(Map<String, Set<ObjectId>> grams, String text, ObjectId id) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM_LENGTH);
+            Set<ObjectId> posting = grams.get(gram);
+            if (posting == null) {
+                posting = new HashSet();
+                grams.put(gram, posting);
+            }
+            posting.add(id);
+        }
+    }
+
+    private static void removeGrams(Map<String, Set<ObjectId>> grams, String text, ObjectId id) {
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            String gram = text.substring(i, i + GRAM_LENGTH);
+            Set<ObjectId> posting = grams.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    grams.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Collection<ObjectId> smaller(Collection<ObjectId> current, Collection<ObjectId> other) {
+        if (current == null) {
+            return other;
+        }
+        return other == null || current.size() <= other.size() ? current : other;
+    }
+
+    private boolean isReviewedBy(ObjectId bookId, String username) {
+        List<Review> bookReviews = reviewsOf(bookId);
+        for (int i = 0; i < bookReviews.size(); i++) {
+            User user = bookReviews.get(i).getUser();
+            if (user != null && username.equals(user.getUsername())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Review> reviewsOf(ObjectId bookId) {
+        List<Review> bookReviews = reviews.get(bookId);
+        return bookReviews == null ? Collections.emptyList() : bookReviews;
+    }
+
+    private static List<Book> copiesOf(Collection<Book> books) {
+        List<Book> copies = new ArrayList(books.size());
+        for (Book book : books) {
+            copies.add(summaryOf(book));
+        }
+        return copies;
+    }
+
+    /**
+     * The logged in user, for the methods only a logged in user may call.
+     *
+     * @throws SessionExpiredException if no user is logged in
+     */
+    private User requireUser() {
+        User user = currentUser;
+        if (user == null) {
+            throw new SessionExpiredException();
+        }
+        return user;
+    }
+
+    /**
+     * Copy a book without its reviews, keeping its number of reviews.
+     */
+    private static Book summaryOf(Book book) {
+        Book copy = new Book(book.getBId(), book.getTitle(), book.getIsbn(), book.getPublished(), book.getGenre(), book.getRating(), book.getUser());
+        copy.addAuthors(book.getAuthors());
+        copy.setNrOfReviews(book.getNrOfReviews());
+        return copy;
+    }
+
+    /**
+     * The ratings of the books in ascending order, with the id of each book
+     * in a parallel array.
+     */
+    private static final class RatingIndex {
+
+        private double[] ratings = new double[16];
+        private ObjectId[] ids = new ObjectId[16];
+        private int size;
+
+        void add(double rating, ObjectId id) {
+            if (size == ratings.length) {
+                ratings = Arrays.copyOf(ratings, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            int at = firstAbove(rating);
+            System.arraycopy(ratings, at, ratings, at + 1, size - at);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ratings[at] = rating;
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(double rating, ObjectId id) {
+            for (int i = firstAtLeast(rating); i < size && ratings[i] == rating; i++) {
+                if (ids[i].equals(id)) {
+                    System.arraycopy(ratings, i + 1, ratings, i, size - i - 1);
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    size--;
+                    ids[size] = null;
+                    return;
+                }
+            }
+        }
+
+        List<ObjectId> range(double min, double max) {
+            int from = firstAtLeast(min);
+            int to = firstAbove(max);
+            return from < to ? Arrays.asList(Arrays.copyOfRange(ids, from, to)) : new ArrayList();
+        }
+
+        private int firstAtLeast(double rating) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ratings[mid] < rating) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int firstAbove(double rating) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ratings[mid] <= rating) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
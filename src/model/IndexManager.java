@@ -0,0 +1,128 @@
+package model;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import static com.mongodb.client.model.Indexes.ascending;
+import static com.mongodb.client.model.Indexes.compoundIndex;
+import static com.mongodb.client.model.Indexes.text;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+/**
+ * Creates the indexes the queries in {@code BooksDb} rely on and reports, by
+ * asking the server to explain a query, which index a query would use.
+ *
+ * @author Umar A & Rabi S
+ */
+public class IndexManager {
+
+    private final MongoDatabase database;
+    private final MongoCollection<Document> booksCollection;
+    private final MongoCollection<Document> usersCollection;
+    private final MongoCollection<Document> reviewsCollection;
+
+    public IndexManager(MongoDatabase database, MongoCollection<Document> booksCollection, MongoCollection<Document> usersCollection,
+            MongoCollection<Document> reviewsCollection) {
+        this.database = database;
+        this.booksCollection = booksCollection;
+        this.usersCollection = usersCollection;
+        this.reviewsCollection = reviewsCollection;
+    }
+
+    /**
+     * Creates the indexes if they are missing. Creating an index that already
+     * exists is a no-op on the server, so this is safe to call on every
+     * connect. A unique index that clashes with duplicates already in the
+     * collection is skipped instead of failing the connect.
+     *
+     * @return a {@code List<String>} with the indexes that could not be
+     * created.
+     */
+    public List<String> ensureIndexes() {
+        List<String> failed = new ArrayList();
+
+        createIndex(usersCollection, ascending("username"), true, failed);
+        createIndex(booksCollection, ascending("isbn"), true, failed);
+        createIndex(booksCollection, ascending("genre", "rating"), false, failed);
+        createIndex(booksCollection, ascending("rating"), false, failed);
+        createIndex(booksCollection, ascending("reviews.addedByUser"), false, failed);
+        createIndex(booksCollection, ascending("titleKeys"), false, failed);
+        createIndex(booksCollection, ascending("authorKeys"), false, failed);
+        createIndex(booksCollection, compoundIndex(text("title"), text("authors.name")), false, failed);
+        createIndex(reviewsCollection, ascending("bookId", "seq"), true, failed);
+        createIndex(reviewsCollection, ascending("bookId", "reviews.addedByUser"), false, failed);
+
+        return failed;
+    }
+
+    /**
+     * Asks the server for the winning plan of a find on the collection.
+     *
+     * @param collection
+     * @param filter
+     * @param projection the projection of the query, or null for none
+     *
+     * @return a {@code String} with the stages of the plan from the last to
+     * the first, for example {@code "FETCH <- IXSCAN genre_1_rating_1"}, and
+     * {@code " (covered)"} appended when no documents have to be fetched.
+     */
+    public String explain(MongoCollection<?> collection, Bson filter, Bson projection) {
+        Document find = new Document("find", collection.getNamespace().getCollectionName());
+        find.append("filter", filter.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        if (projection != null) {
+            find.append("projection", projection.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        }
+
+        Document command = new Document("explain", find).append("verbosity", "queryPlanner");
+        Document queryPlanner = database.runCommand(command).get("queryPlanner", Document.class);
+
+        return describePlan(queryPlanner.get("winningPlan", Document.class));
+    }
+
+    private String describePlan(Document stage) {
+        String plan = "";
+        boolean usesIndex = false;
+        boolean fetches = false;
+
+        while (stage != null) {
+            String name = stage.getString("stage");
+            if (!plan.isEmpty()) {
+                plan += " <- ";
+            }
+            plan += name;
+
+            if ("IXSCAN".equals(name)) {
+                plan += " " + stage.getString("indexName");
+                usesIndex = true;
+            } else if ("FETCH".equals(name) || "COLLSCAN".equals(name)) {
+                fetches = true;
+            }
+
+            if (stage.containsKey("inputStage")) {
+                stage = stage.get("inputStage", Document.class);
+            } else if (stage.containsKey("inputStages")) {
+                stage = stage.getList("inputStages", Document.class).get(0);
+            } else {
+                stage = null;
+            }
+        }
+
+        if (usesIndex && !fetches) {
+            plan += " (covered)";
+        }
+        return plan;
+    }
+
+    private void createIndex(MongoCollection<Document> collection, Bson keys, boolean unique, List<String> failed) {
+        try {
+            collection.createIndex(keys, new IndexOptions().unique(unique));
+        } catch (MongoCommandException e) {
+            failed.add(collection.getNamespace().getCollectionName() + " " + keys + ": " + e.getErrorMessage());
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.bson.types.ObjectId;
+
+/**
+ * A BooksDbInterface that measures every call to another BooksDbInterface.
+ * For each method it counts the calls and the calls that threw, keeps a
+ * histogram of the latencies and the sizes of the results, so the p50, p99
+ * and p999 of for example getTheBooks, searchBooksByTitle and addReviewToDb
+ * can be told apart.
+ *
+ * The statistics of each method are registered as an MXBean named
+ * {@code model:type=BooksDb,operation=<method>} on the platform MBean server,
+ * and, when a file is given, written to it as a table at a fixed rate and
+ * once more on disconnect. The paged getTheBooks is counted as
+ * getTheBooksPage.
+ *
+ * When the measured BooksDbInterface is a {@code CachedBooksDb}, the hit and
+ * miss counters of its caches are shown too, as
+ * {@code model:type=BooksDb,cache=books} and {@code cache=searches}, and
+ * below the table.
+ *
+ * @author Umar A & Rabi S
+ */
+public class MeteredBooksDb implements BooksDbInterface {
+
+    public static final String JMX_DOMAIN = "model";
+    private static final long DEFAULT_DUMP_SECONDS = 60;
+    private static final int NO_SIZE = -1;
+
+    private final BooksDbInterface booksDb;
+    private final Map<String, OperationStats> operations;
+    private final List<ObjectName> registered;
+    private final File dumpFile;
+    private final ScheduledExecutorService dumper;
+
+    private final OperationStats loginAsGuest;
+    private final OperationStats loginAsUser;
+    private final OperationStats disconnect;
+    private final OperationStats watchBooks;
+    private final OperationStats getTheBooks;
+    private final OperationStats getTheBooksPage;
+    private final OperationStats getBooksById;
+    private final OperationStats forEachBookKeys;
+    private final OperationStats addBookToDb;
+    private final OperationStats importBooks;
+    private final OperationStats exportBooks;
+    private final OperationStats deleteBookFromDb;
+    private final OperationStats addReviewToDb;
+    private final OperationStats createAccToDb;
+    private final OperationStats isUsernameAvailable;
+    private final OperationStats isIsbnAvailable;
+    private final OperationStats isUser;
+    private final OperationStats isLoggedIn;
+    private final OperationStats isBookReviewedByUser;
+    private final OperationStats getReviewsOfBook;
+    private final OperationStats searchBooksByTitle;
+    private final OperationStats searchBooksByISBN;
+    private final OperationStats searchBooksByAuthor;
+    private final OperationStats searchBooksByKeywords;
+    private final OperationStats searchBooksByRating;
+    private final OperationStats searchBooksByGenre;
+    private final OperationStats searchBooks;
+    private final OperationStats suggestBooks;
+
+    /**
+     * Measure the calls to a BooksDbInterface, exposed over JMX only.
+     *
+     * @param booksDb
+     */
+    public MeteredBooksDb(BooksDbInterface booksDb) {
+        this(booksDb, null, DEFAULT_DUMP_SECONDS);
+    }
+
+    /**
+     * Measure the calls to a BooksDbInterface, exposed over JMX and written
+     * to a file every dumpSeconds seconds.
+     *
+     * @param booksDb
+     * @param dumpFile the file to write the table to, or null for none
+     * @param dumpSeconds
+     */
+    public MeteredBooksDb(BooksDbInterface booksDb, File dumpFile, long dumpSeconds) {
+        this.booksDb = booksDb;
+        this.operations = new LinkedHashMap();
+        this.registered = new ArrayList();
+        this.dumpFile = dumpFile;
+
+        this.loginAsGuest = operation("loginAsGuest");
+        this.loginAsUser = operation("loginAsUser");
+        this.disconnect = operation("disconnect");
+        this.watchBooks = operation("watchBooks");
+        this.getTheBooks = operation("getTheBooks");
+        this.getTheBooksPage = operation("getTheBooksPage");
+        this.getBooksById = operation("getBooksById");
+        this.forEachBookKeys = operation("forEachBookKeys");
+        this.addBookToDb = operation("addBookToDb");
+        this.importBooks = operation("importBooks");
+        this.exportBooks = operation("exportBooks");
+        this.deleteBookFromDb = operation("deleteBookFromDb");
+        this.addReviewToDb = operation("addReviewToDb");
+        this.createAccToDb = operation("createAccToDb");
+        this.isUsernameAvailable = operation("isUsernameAvailable");
+        this.isIsbnAvailable = operation("isIsbnAvailable");
+        this.isUser = operation("isUser");
+        this.isLoggedIn = operation("isLoggedIn");
+        this.isBookReviewedByUser = operation("isBookReviewedByUser");
+        this.getReviewsOfBook = operation("getReviewsOfBook");
+        this.searchBooksByTitle = operation("searchBooksByTitle");
+        this.searchBooksByISBN = operation("searchBooksByISBN");
+        this.searchBooksByAuthor = operation("searchBooksByAuthor");
+        this.searchBooksByKeywords = operation("searchBooksByKeywords");
+        this.searchBooksByRating = operation("searchBooksByRating");
+        this.searchBooksByGenre = operation("searchBooksByGenre");
+        this.searchBooks = operation("searchBooks");
+        this.suggestBooks = operation("suggestBooks");
+
+        registerMBeans();
+
+        if (dumpFile != null) {
+            this.dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "booksdb-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.dumper.scheduleAtFixedRate(() -> dump(), dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+        } else {
+            this.dumper = null;
+        }
+    }
+
+    /**
+     * Get the statistics of every method, in the order of BooksDbInterface.
+     *
+     * @return a {@code Collection<OperationStats>} with one entry per method
+     */
+    public Collection<OperationStats> getOperations() {
+        return Collections.unmodifiableCollection(operations.values());
+    }
+
+    /**
+     * Get the statistics of one method.
+     *
+     * @param operation the name of the method, getTheBooksPage for the paged
+     * getTheBooks
+     * @return the {@code OperationStats}, or null if there is no such method
+     */
+    public OperationStats getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * Write the statistics of every method to the dump file now. The table
+     * is written to a temporary file first and moved over the old one, so a
+     * reader never sees half a table.
+     */
+    public void dump() {
+        if (dumpFile == null) {
+            return;
+        }
+        try {
+            Path target = dumpFile.toPath().toAbsolutePath();
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8))) {
+                out.println("# " + LocalDateTime.now() + ", latencies in milliseconds");
+                out.println(String.format("%-22s %9s %7s %10s %10s %10s %10s %10s %10s %8s",
+                        "operation", "calls", "errors", "mean", "p50", "p99", "p999", "max", "mean size", "max size"));
+                for (OperationStats stats : operations.values()) {
+                    out.println(stats);
+                }
+                if (booksDb instanceof CachedBooksDb) {
+                    BookCacheMXBean books = ((CachedBooksDb) booksDb).getCache();
+                    SearchCacheMXBean searches = ((CachedBooksDb) booksDb).getSearchCache();
+                    out.println();
+                    out.println(String.format("%-22s %9s %9s %9s", "cache", "hits", "misses", "dropped"));
+                    out.println(String.format("%-22s %9d %9d %9d", "books", books.getHitCount(), books.getMissCount(), books.getEvictionCount()));
+                    out.println(String.format("%-22s %9d %9d %9d", "searches", searches.getHitCount(), searches.getMissCount(), searches.getInvalidationCount()));
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the next dump tries again
+        }
+    }
+
+    @Override
+    public void loginAsGuest() {
+        run(loginAsGuest, () -> booksDb.loginAsGuest());
+    }
+
+    @Override
+    public User loginAsUser(User user) {
+        return time(loginAsUser, () -> booksDb.loginAsUser(user));
+    }
+
+    /**
+     * Close the connection, write the statistics a last time and take the
+     * MXBeans off the MBean server.
+     */
+    @Override
+    public void disconnect() {
+        try {
+            run(disconnect, () -> booksDb.disconnect());
+        } finally {
+            if (dumper != null) {
+                dumper.shutdownNow();
+            }
+            dump();
+            unregisterMBeans();
+        }
+    }
+
+    @Override
+    public void watchBooks(BookChangeListener listener) {
+        run(watchBooks, () -> booksDb.watchBooks(listener));
+    }
+
+    @Override
+    public List<Book> getTheBooks() {
+        return time(getTheBooks, () -> booksDb.getTheBooks());
+    }
+
+    @Override
+    public List<Book> getTheBooks(ObjectId afterId, int pageSize) {
+        return time(getTheBooksPage, () -> booksDb.getTheBooks(afterId, pageSize));
+    }
+
+    @Override
+    public List<Book> getBooksById(List<ObjectId> bookIds) {
+        return time(getBooksById, () -> booksDb.getBooksById(bookIds));
+    }
+
+    @Override
+    public void forEachBookKeys(BookKeysConsumer consumer) {
+        run(forEachBookKeys, () -> booksDb.forEachBookKeys(consumer));
+    }
+
+    @Override
+    public Book addBookToDb(Book bookToBeAdded) {
+        return time(addBookToDb, () -> booksDb.addBookToDb(bookToBeAdded));
+    }
+
+    @Override
+    public ImportReport importBooks(File feed) throws IOException {
+        long start = System.nanoTime();
+        try {
+            ImportReport report = booksDb.importBooks(feed);
+            importBooks.record(System.nanoTime() - start, (int) Math.min(report.getRowsInserted(), Integer.MAX_VALUE));
+            return report;
+        } catch (IOException | RuntimeException | Error e) {
+            importBooks.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public ExportReport exportBooks(File target) throws IOException {
+        long start = System.nanoTime();
+        try {
+            ExportReport report = booksDb.exportBooks(target);
+            exportBooks.record(System.nanoTime() - start, (int) Math.min(report.getBooksWritten(), Integer.MAX_VALUE));
+            return report;
+        } catch (IOException | RuntimeException | Error e) {
+            exportBooks.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    @Override
+    public Book deleteBookFromDb(Book bookToBeDeleted) {
+        return time(deleteBookFromDb, () -> booksDb.deleteBookFromDb(bookToBeDeleted));
+    }
+
+    @Override
+    public Book addReviewToDb(Book reviewToBeAdded) {
+        return time(addReviewToDb, () -> booksDb.addReviewToDb(reviewToBeAdded));
+    }
+
+    @Override
+    public User createAccToDb(User userToBeAdded) {
+        return time(createAccToDb, () -> booksDb.createAccToDb(userToBeAdded));
+    }
+
+    @Override
+    public boolean isUsernameAvailable(User user) {
+        return time(isUsernameAvailable, () -> booksDb.isUsernameAvailable(user));
+    }
+
+    @Override
+    public boolean isIsbnAvailable(String isbn) {
+        return time(isIsbnAvailable, () -> booksDb.isIsbnAvailable(isbn));
+    }
+
+    @Override
+    public boolean isUser(User user) {
+        return time(isUser, () -> booksDb.isUser(user));
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        return time(isLoggedIn, () -> booksDb.isLoggedIn());
+    }
+
+    @Override
+    public boolean isBookReviewedByUser(Book bookToBeReviewed) {
+        return time(isBookReviewedByUser, () -> booksDb.isBookReviewedByUser(bookToBeReviewed));
+    }
+
+    @Override
+    public List<Review> getReviewsOfBook(Book book) {
+        return time(getReviewsOfBook, () -> booksDb.getReviewsOfBook(book));
+    }
+
+    @Override
+    public List<Book> searchBooksByTitle(String title) {
+        return time(searchBooksByTitle, () -> booksDb.searchBooksByTitle(title));
+    }
+
+    @Override
+    public List<Book> searchBooksByISBN(String isbn) {
+        return time(searchBooksByISBN, () -> booksDb.searchBooksByISBN(isbn));
+    }
+
+    @Override
+    public List<Book> searchBooksByAuthor(String author) {
+        return time(searchBooksByAuthor, () -> booksDb.searchBooksByAuthor(author));
+    }
+
+    @Override
+    public List<Book> searchBooksByKeywords(String keywords) {
+        return time(searchBooksByKeywords, () -> booksDb.searchBooksByKeywords(keywords));
+    }
+
+    @Override
+    public List<Book> searchBooksByRating(double min, double max) {
+        return time(searchBooksByRating, () -> booksDb.searchBooksByRating(min, max));
+    }
+
+    @Override
+    public List<Book> searchBooksByGenre(String genre) {
+        return time(searchBooksByGenre, () -> booksDb.searchBooksByGenre(genre));
+    }
+
+    @Override
+    public List<Book> searchBooks(BookQuery query) {
+        return time(searchBooks, () -> booksDb.searchBooks(query));
+    }
+
+    @Override
+    public List<Book> suggestBooks(String prefix, SearchMode mode, int limit) {
+        return time(suggestBooks, () -> booksDb.suggestBooks(prefix, mode, limit));
+    }
+
+    private OperationStats operation(String name) {
+        OperationStats stats = new OperationStats(name);
+        operations.put(name, stats);
+        return stats;
+    }
+
+    private <T> T time(OperationStats stats, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            stats.record(System.nanoTime() - start, sizeOf(result));
+            return result;
+        } catch (RuntimeException | Error e) {
+            stats.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    private void run(OperationStats stats, Runnable call) {
+        long start = System.nanoTime();
+        try {
+            call.run();
+            stats.record(System.nanoTime() - start, NO_SIZE);
+        } catch (RuntimeException | Error e) {
+            stats.recordError(System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    // lists count their elements, a book or a user counts as one and null as
+    // none, the answers of the is-methods have no size
+    private static int sizeOf(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection) result).size();
+        }
+        if (result instanceof Book || result instanceof User) {
+            return 1;
+        }
+        return result == null ? 0 : NO_SIZE;
+    }
+
+    // while another MeteredBooksDb in the same JVM holds the names, only the
+    // dump file shows the statistics of this one
+    private void registerMBeans() {
+        for (OperationStats stats : operations.values()) {
+            registerMBean(stats, "operation=" + stats.getOperation());
+        }
+        if (booksDb instanceof CachedBooksDb) {
+            registerMBean(((CachedBooksDb) booksDb).getCache(), "cache=books");
+            registerMBean(((CachedBooksDb) booksDb).getSearchCache(), "cache=searches");
+        }
+    }
+
+    private void registerMBean(Object bean, String key) {
+        try {
+            ObjectName name = new ObjectName(JMX_DOMAIN + ":type=BooksDb," + key);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            // the statistics are still in the dump file
+        }
+    }
+
+    private void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone
+            }
+        }
+        registered.clear();
+    }
+}
@@ -0,0 +1,136 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The call count, error count, latency histogram and result sizes of one
+ * BooksDbInterface method, recorded by the {@code MeteredBooksDb}.
+ *
+ * @author Umar A & Rabi S
+ */
+public class OperationStats implements OperationStatsMXBean {
+
+    private static final double NANOS_PER_MILLI = 1000 * 1000;
+
+    private final String operation;
+    private final LatencyHistogram latencies;
+    private final AtomicLong errors;
+    private final AtomicLong sizedCalls;
+    private final AtomicLong totalResultSize;
+    private final AtomicLong maxResultSize;
+
+    public OperationStats(String operation) {
+        this.operation = operation;
+        this.latencies = new LatencyHistogram();
+        this.errors = new AtomicLong();
+        this.sizedCalls = new AtomicLong();
+        this.totalResultSize = new AtomicLong();
+        this.maxResultSize = new AtomicLong();
+    }
+
+    /**
+     * Record a call that returned.
+     *
+     * @param nanos how long the call took
+     * @param resultSize the number of books, reviews or users returned, or
+     * -1 if the method returns no such thing
+     */
+    public void record(long nanos, int resultSize) {
+        latencies.record(nanos);
+        if (resultSize >= 0) {
+            sizedCalls.incrementAndGet();
+            totalResultSize.addAndGet(resultSize);
+            long max = maxResultSize.get();
+            while (resultSize > max && !maxResultSize.compareAndSet(max, resultSize)) {
+                max = maxResultSize.get();
+            }
+        }
+    }
+
+    /**
+     * Record a call that threw.
+     *
+     * @param nanos how long the call took
+     */
+    public void recordError(long nanos) {
+        latencies.record(nanos);
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Get the latency histogram, for percentiles other than the ones
+     * exposed over JMX.
+     *
+     * @return the {@code LatencyHistogram} of the calls in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latencies.getMean() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latencies.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latencies.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latencies.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latencies.getMax() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getMeanResultSize() {
+        long calls = sizedCalls.get();
+        return calls == 0 ? 0 : (double) totalResultSize.get() / calls;
+    }
+
+    @Override
+    public long getMaxResultSize() {
+        return maxResultSize.get();
+    }
+
+    @Override
+    public void reset() {
+        latencies.reset();
+        errors.set(0);
+        sizedCalls.set(0);
+        totalResultSize.set(0);
+        maxResultSize.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-22s %9d %7d %10.3f %10.3f %10.3f %10.3f %10.3f %10.1f %8d",
+                operation, getCalls(), getErrors(), getMeanMillis(), getP50Millis(), getP99Millis(),
+                getP999Millis(), getMaxMillis(), getMeanResultSize(), getMaxResultSize());
+    }
+}
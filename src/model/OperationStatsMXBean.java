@@ -0,0 +1,42 @@
+package model;
+
+/**
+ * The statistics of one BooksDbInterface method as shown over JMX, for
+ * example in JConsole or VisualVM. The latencies are in milliseconds and
+ * count since the start of the client or the last reset.
+ *
+ * @author Umar A & Rabi S
+ */
+public interface OperationStatsMXBean {
+
+    public String getOperation();
+
+    public long getCalls();
+
+    public long getErrors();
+
+    public double getMeanMillis();
+
+    public double getP50Millis();
+
+    public double getP99Millis();
+
+    public double getP999Millis();
+
+    public double getMaxMillis();
+
+    /**
+     * Get the mean number of books, reviews or users the method returned,
+     * or 0 for methods that return no such thing.
+     *
+     * @return the mean result size
+     */
+    public double getMeanResultSize();
+
+    public long getMaxResultSize();
+
+    /**
+     * Start counting again from nothing.
+     */
+    public void reset();
+}
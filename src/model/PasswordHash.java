@@ -0,0 +1,101 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 hashes of passwords, stored as
+ * "pbkdf2-sha256$iterations$salt$hash" with the salt and hash in base64, so
+ * the number of iterations can be raised later without breaking the hashes
+ * already stored.
+ *
+ * @author Umar A & Rabi S
+ */
+public final class PasswordHash {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256";
+    private static final int ITERATIONS = 65536;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHash() {
+    }
+
+    /**
+     * Hash a password with a new random salt.
+     *
+     * @param password
+     * @return a {@code String} with the algorithm, iterations, salt and hash
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, ITERATIONS, HASH_BITS);
+
+        Base64.Encoder base64 = Base64.getEncoder();
+        return PREFIX + "$" + ITERATIONS + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(hash);
+    }
+
+    /**
+     * Check a password against a stored hash, in a time that does not tell
+     * how much of the hash matched.
+     *
+     * @param password
+     * @param stored a hash made by {@code hash}
+     * @return a {@code boolean} if the password is the hashed one
+     */
+    public static boolean matches(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(PREFIX)) {
+            return false;
+        }
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] salt = base64.decode(parts[2]);
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = pbkdf2(password, salt, Integer.parseInt(parts[1]), expected.length * 8);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check a password against a password stored in plain text, as before
+     * passwords were hashed, in a time that does not tell how much of it
+     * matched.
+     *
+     * @param password
+     * @param stored
+     * @return a {@code boolean} if the passwords are the same
+     */
+    public static boolean matchesPlain(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // every Java 8 runtime has PBKDF2WithHmacSHA256
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.types.ObjectId;
+
+/**
+ * An in-memory index of the books for type-ahead searches on the title, the
+ * author names and the isbn. Each is a sorted array of normalized keys, the
+ * same keys the database searches, with the id of the book of each key in a
+ * parallel array. A lookup is a binary search for the first key with the
+ * prefix and a scan to the last one, so it answers in microseconds without
+ * asking the server. Only the keys and ids are held, the books themselves
+ * are fetched by id for the few ids a lookup returns.
+ *
+ * The arrays are replaced, never changed, so lookups read them without a
+ * lock. A write copies the arrays once, which is cheap for the number of
+ * books in a catalogue and rare next to the lookups. Writes made while the
+ * index is loading are kept and applied on top of the loaded keys.
+ *
+ * @author Umar A & Rabi S
+ */
+public class PrefixIndex implements BookKeysConsumer {
+
+    private volatile Keys titles;
+    private volatile Keys authors;
+    private volatile Keys isbns;
+    private volatile boolean isLoaded;
+
+    private boolean isLoading;
+    private List<Entry> loadedTitles;
+    private List<Entry> loadedAuthors;
+    private List<Entry> loadedIsbns;
+    private final Map<ObjectId, Book> changedWhileLoading;
+    private final Set<ObjectId> removedWhileLoading;
+
+    public PrefixIndex() {
+        this.titles = Keys.EMPTY;
+        this.authors = Keys.EMPTY;
+        this.isbns = Keys.EMPTY;
+        this.isLoaded = false;
+        this.isLoading = false;
+        this.changedWhileLoading = new LinkedHashMap();
+        this.removedWhileLoading = new HashSet();
+    }
+
+    /**
+     * Check if the books have been loaded, so lookups see every book.
+     *
+     * @return a {@code boolean} if the index is loaded
+     */
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /**
+     * Start a load. The keys of the books are then passed to {@code accept}
+     * and the load ends with {@code finishLoad}. Changes made from now on are
+     * applied again after the loaded keys, which may have been read before
+     * them.
+     */
+    public synchronized void beginLoad() {
+        isLoading = true;
+        loadedTitles = new ArrayList();
+        loadedAuthors = new ArrayList();
+        loadedIsbns = new ArrayList();
+        changedWhileLoading.clear();
+        removedWhileLoading.clear();
+    }
+
+    /**
+     * Add the keys of a book to the load that has begun.
+     */
+    @Override
+    public synchronized void accept(ObjectId bookId, List<String> titleKeys, List<String> authorKeys, String isbn) {
+        if (!isLoading) {
+            return;
+        }
+        addEntries(loadedTitles, bookId, titleKeys);
+        addEntries(loadedAuthors, bookId, authorKeys);
+        if (isbn != null) {
+            loadedIsbns.add(new Entry(SearchKeys.normalizeIsbn(isbn), bookId));
+        }
+    }
+
+    /**
+     * Replace the index with the loaded keys and the changes made since
+     * {@code beginLoad}.
+     */
+    public synchronized void finishLoad() {
+        if (!isLoading) {
+            return;
+        }
+        Set<ObjectId> replaced = new HashSet(removedWhileLoading);
+        replaced.addAll(changedWhileLoading.keySet());
+        List<Book> changed = new ArrayList(changedWhileLoading.values());
+
+        titles = Keys.build(loadedTitles, replaced, changed, SearchMode.Title);
+        authors = Keys.build(loadedAuthors, replaced, changed, SearchMode.Author);
+        isbns = Keys.build(loadedIsbns, replaced, changed, SearchMode.ISBN);
+        isLoaded = true;
+        endLoad();
+    }
+
+    /**
+     * Give up a load that failed, leaving the index as it was.
+     */
+    public synchronized void abortLoad() {
+        endLoad();
+    }
+
+    /**
+     * Add a book, or replace the keys of a book that changed.
+     *
+     * @param book
+     */
+    public synchronized void putBook(Book book) {
+        if (isLoading) {
+            removedWhileLoading.remove(book.getBId());
+            changedWhileLoading.put(book.getBId(), book);
+        }
+        titles = titles.with(book, SearchMode.Title);
+        authors = authors.with(book, SearchMode.Author);
+        isbns = isbns.with(book, SearchMode.ISBN);
+    }
+
+    /**
+     * Remove a book.
+     *
+     * @param bookId
+     */
+    public synchronized void removeBook(ObjectId bookId) {
+        if (isLoading) {
+            changedWhileLoading.remove(bookId);
+            removedWhileLoading.add(bookId);
+        }
+        titles = titles.without(bookId);
+        authors = authors.without(bookId);
+        isbns = isbns.without(bookId);
+    }
+
+    /**
+     * Drop every book, until the next load.
+     */
+    public synchronized void clear() {
+        titles = Keys.EMPTY;
+        authors = Keys.EMPTY;
+        isbns = Keys.EMPTY;
+        isLoaded = false;
+    }
+
+    /**
+     * Get the ids of the books with a key starting with the prefix, in the
+     * order of their keys.
+     *
+     * @param prefix the start of a word in the title or an author name, or of
+     * the isbn
+     * @param mode Title, Author or ISBN
+     * @param limit the most ids to return
+     * @return a {@code List<ObjectId>} of at most limit book ids, empty for
+     * the other search modes
+     */
+    public List<ObjectId> lookup(String prefix, SearchMode mode, int limit) {
+        Keys keys;
+        String key;
+        switch (mode) {
+            case Title:
+                keys = titles;
+                key = SearchKeys.normalize(prefix);
+                break;
+            case Author:
+                keys = authors;
+                key = SearchKeys.normalize(prefix);
+                break;
+            case ISBN:
+                keys = isbns;
+                key = SearchKeys.normalizeIsbn(prefix);
+                break;
+            default:
+                return new ArrayList();
+        }
+        return keys.lookup(key, limit);
+    }
+
+    private void endLoad() {
+        isLoading = false;
+        loadedTitles = null;
+        loadedAuthors = null;
+        loadedIsbns = null;
+        changedWhileLoading.clear();
+        removedWhileLoading.clear();
+    }
+
+    private static void addEntries(List<Entry> entries, ObjectId bookId, List<String> bookKeys) {
+        for (int i = 0; i < bookKeys.size(); i++) {
+            entries.add(new Entry(bookKeys.get(i), bookId));
+        }
+    }
+
+    private static List<String> keysOf(Book book, SearchMode mode) {
+        switch (mode) {
+            case Title:
+                return SearchKeys.keysOf(book.getTitle());
+            case Author:
+                return SearchKeys.keysOfAuthors(book.getAuthors());
+            default:
+                List<String> isbn = new ArrayList();
+                isbn.add(SearchKeys.normalizeIsbn(book.getIsbn()));
+                return isbn;
+        }
+    }
+
+    /**
+     * One sorted array of keys with the book id of each key.
+     */
+    private static final class Keys {
+
+        static final Keys EMPTY = new Keys(new String[0], new ObjectId[0]);
+
+        final String[] keys;
+        final ObjectId[] ids;
+
+        Keys(String[] keys, ObjectId[] ids) {
+            this.keys = keys;
+            this.ids = ids;
+        }
+
+        /**
+         * Build the keys of a load, less those of the replaced books, with
+         * the keys of the changed books.
+         */
+        static Keys build(List<Entry> loaded, Set<ObjectId> replaced, List<Book> changed, SearchMode mode) {
+            List<Entry> entries = new ArrayList(loaded.size());
+            for (int i = 0; i < loaded.size(); i++) {
+                if (!replaced.contains(loaded.get(i).id)) {
+                    entries.add(loaded.get(i));
+                }
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                addEntries(entries, changed.get(i).getBId(), keysOf(changed.get(i), mode));
+            }
+            Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+            Arrays.sort(sorted);
+            return fromEntries(sorted, sorted.length);
+        }
+
+        /**
+         * Get a copy with the keys of the book in place of its old keys.
+         */
+        Keys with(Book book, SearchMode mode) {
+            List<Entry> added = new ArrayList();
+            addEntries(added, book.getBId(), keysOf(book, mode));
+            Entry[] newEntries = added.toArray(new Entry[added.size()]);
+            Arrays.sort(newEntries);
+
+            // merge the old keys, less those of the book, with the new ones
+            Entry[] merged = new Entry[keys.length + newEntries.length];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (ids[i].equals(book.getBId())) {
+                    continue;
+                }
+                while (next < newEntries.length && newEntries[next].key.compareTo(keys[i]) < 0) {
+                    merged[size++] = newEntries[next++];
+                }
+                merged[size++] = new Entry(keys[i], ids[i]);
+            }
+            while (next < newEntries.length) {
+                merged[size++] = newEntries[next++];
+            }
+            return fromEntries(merged, size);
+        }
+
+        /**
+         * Get a copy without the keys of the book.
+         */
+        Keys without(ObjectId bookId) {
+            Entry[] kept = new Entry[keys.length];
+            int size = 0;
+            for (int i = 0; i < keys.length; i++) {
+                if (!ids[i].equals(bookId)) {
+                    kept[size++] = new Entry(keys[i], ids[i]);
+                }
+            }
+            return size == keys.length ? this : fromEntries(kept, size);
+        }
+
+        List<ObjectId> lookup(String prefix, int limit) {
+            List<ObjectId> found = new ArrayList();
+            if (prefix.isEmpty()) {
+                return found;
+            }
+
+            // a book with several matching keys is returned once
+            Set<ObjectId> seen = new HashSet();
+            for (int i = firstAtLeast(prefix); i < keys.length && found.size() < limit; i++) {
+                if (!keys[i].startsWith(prefix)) {
+                    break;
+                }
+                if (seen.add(ids[i])) {
+                    found.add(ids[i]);
+                }
+            }
+            return found;
+        }
+
+        private int firstAtLeast(String prefix) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static Keys fromEntries(Entry[] entries, int size) {
+            String[] keys = new String[size];
+            ObjectId[] ids = new ObjectId[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = entries[i].key;
+                ids[i] = entries[i].id;
+            }
+            return new Keys(keys, ids);
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final String key;
+        final ObjectId id;
+
+        Entry(String key, ObjectId id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
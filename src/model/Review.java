@@ -21,6 +21,13 @@ public class Review {
         this.user = user;
     }
 
+    public Review(double bRating, String revString, LocalDate dateAdded, User user) {
+        this.bRating = bRating;
+        this.revString = revString;
+        this.dateAdded = dateAdded;
+        this.user = user;
+    }
+
     public Review(double bRating, String revString, String dateAdded) {
         this.bRating = bRating;
         this.revString = revString;
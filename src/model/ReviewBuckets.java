@@ -0,0 +1,262 @@
+package model;
+
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.inc;
+import static com.mongodb.client.model.Updates.push;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.UpdateResult;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+/**
+ * Keeps the reviews of the books in the reviews collection instead of in the
+ * book documents, using the bucket pattern. A bucket holds up to a fixed
+ * number of reviews of one book:
+ * <pre>
+ * {bookId: ObjectId, seq: 0, count: 2, reviews: [{rating, text, dateAdded, addedByUser}, ...]}
+ * </pre>
+ * A new review goes in the last bucket of its book until that bucket is full,
+ * so adding a review is one update of one small bucket however many reviews
+ * the book has, and the book documents stay the same size.
+ *
+ * @author Umar A & Rabi S
+ */
+public class ReviewBuckets {
+
+    public static final int DEFAULT_BUCKET_SIZE = 50;
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final MongoCollection<Document> reviewsCollection;
+    private final int bucketSize;
+
+    public ReviewBuckets(MongoCollection<Document> reviewsCollection, int bucketSize) {
+        this.reviewsCollection = reviewsCollection;
+        this.bucketSize = bucketSize;
+    }
+
+    public MongoCollection<Document> getCollection() {
+        return reviewsCollection;
+    }
+
+    /**
+     * Add a review to the last bucket of a book, or to a new bucket when the
+     * last one is full, unless the user has already reviewed the book.
+     *
+     * The push only matches the bucket with the count that was read, and a
+     * new bucket can only be created once through the unique bookId and seq
+     * index, so of two reviews racing for the same place one is added and the
+     * other one is tried again. The user is looked for after the place is
+     * read, so a review by the same user that won the race is found when
+     * trying again.
+     *
+     * @param bookId
+     * @param username
+     * @param review the review document
+     * @return a {@code boolean} if the review was added, false if the user
+     * had already reviewed the book
+     */
+    public boolean addReviewOnce(ObjectId bookId, String username, Document review) {
+        Bson update = combine(push("reviews", review), inc("count", 1));
+
+        while (true) {
+            Document last = reviewsCollection.find(bookFilter(bookId))
+                    .projection(include("seq", "count"))
+                    .sort(descending("seq"))
+                    .first();
+            int seq = last == null ? 0 : last.getInteger("seq", 0);
+            int count = last == null ? 0 : last.getInteger("count", 0);
+            if (count >= bucketSize) {
+                seq++;
+                count = 0;
+            }
+
+            if (isReviewedBy(bookId, username)) {
+                return false;
+            }
+
+            try {
+                UpdateResult result = reviewsCollection.updateOne(and(bucketFilter(bookId, seq), eq("count", count)), update,
+                        new UpdateOptions().upsert(count == 0));
+                if (result.getModifiedCount() > 0 || result.getUpsertedId() != null) {
+                    return true;
+                }
+            } catch (MongoWriteException e) {
+                // another review created the bucket first
+                if (e.getError().getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the reviews of a book in the order they were added.
+     *
+     * @param bookId
+     * @return a {@code List<Review>} of the reviews of the book
+     */
+    public List<Review> getReviews(ObjectId bookId) {
+        List<Review> reviews = new ArrayList();
+        for (Document bucket : reviewsCollection.find(bookFilter(bookId)).projection(include("reviews")).sort(ascending("seq"))) {
+            reviews.addAll(reviewsOf(bucket));
+        }
+        return reviews;
+    }
+
+    /**
+     * Check if a user has reviewed a book.
+     *
+     * @param bookId
+     * @param username
+     * @return a {@code boolean} if any bucket of the book has a review by the
+     * user
+     */
+    public boolean isReviewedBy(ObjectId bookId, String username) {
+        return reviewsCollection.find(reviewedByFilter(bookId, username)).projection(include("_id")).first() != null;
+    }
+
+    /**
+     * Remove every bucket of a book.
+     *
+     * @param bookId
+     */
+    public void deleteReviews(ObjectId bookId) {
+        reviewsCollection.deleteMany(bookFilter(bookId));
+    }
+
+    /**
+     * Remove every bucket of the books.
+     *
+     * @param bookIds
+     */
+    public void deleteReviews(List<ObjectId> bookIds) {
+        if (!bookIds.isEmpty()) {
+            reviewsCollection.deleteMany(in("bookId", bookIds));
+        }
+    }
+
+    /**
+     * Insert the reviews of new books, which have no buckets yet.
+     *
+     * @param books
+     */
+    public void insertReviews(List<Book> books) {
+        List<Document> buckets = new ArrayList();
+        for (int i = 0; i < books.size(); i++) {
+            List<Document> reviews = new ArrayList();
+            for (Review review : books.get(i).getReviews()) {
+                reviews.add(toDocument(review));
+            }
+            buckets.addAll(bucketsOf(books.get(i).getBId(), reviews));
+        }
+        if (!buckets.isEmpty()) {
+            reviewsCollection.insertMany(buckets, new InsertManyOptions().ordered(false));
+        }
+    }
+
+    /**
+     * Replace the buckets of a book with buckets of the given reviews. Doing
+     * it again with the same reviews changes nothing, so an interrupted
+     * migration can be run again.
+     *
+     * @param bookId
+     * @param reviews the review documents, in the order they were added
+     */
+    public void replaceReviews(ObjectId bookId, List<Document> reviews) {
+        List<Document> buckets = bucketsOf(bookId, reviews);
+
+        List<WriteModel<Document>> writes = new ArrayList();
+        for (int i = 0; i < buckets.size(); i++) {
+            writes.add(new ReplaceOneModel(bucketFilter(bookId, i), buckets.get(i), new ReplaceOptions().upsert(true)));
+        }
+        if (!writes.isEmpty()) {
+            reviewsCollection.bulkWrite(writes);
+        }
+        reviewsCollection.deleteMany(and(eq("bookId", bookId), gte("seq", buckets.size())));
+    }
+
+    /**
+     * Get the reviews of a bucket document.
+     *
+     * @param bucket
+     * @return a {@code List<Review>} of the reviews in the bucket
+     */
+    public static List<Review> reviewsOf(Document bucket) {
+        List<Review> reviews = new ArrayList();
+        for (Document review : bucket.getList("reviews", Document.class, new ArrayList<Document>())) {
+            reviews.add(toReview(review));
+        }
+        return reviews;
+    }
+
+    /**
+     * Get a review document, with the same fields as a review embedded in a
+     * book document.
+     *
+     * @param review
+     * @return a {@code Document} of the review
+     */
+    public static Document toDocument(Review review) {
+        Document doc = new Document();
+        doc.append("rating", review.getbRating());
+        doc.append("text", review.getRevString());
+        doc.append("dateAdded", review.getDateAdded());
+        doc.append("addedByUser", review.getUser() == null ? null : review.getUser().getUsername());
+        return doc;
+    }
+
+    Bson bookFilter(ObjectId bookId) {
+        return eq("bookId", bookId);
+    }
+
+    Bson reviewedByFilter(ObjectId bookId, String username) {
+        return and(eq("bookId", bookId), eq("reviews.addedByUser", username));
+    }
+
+    private Bson bucketFilter(ObjectId bookId, int seq) {
+        return and(eq("bookId", bookId), eq("seq", seq));
+    }
+
+    private List<Document> bucketsOf(ObjectId bookId, List<Document> reviews) {
+        List<Document> buckets = new ArrayList();
+        for (int from = 0; from < reviews.size(); from += bucketSize) {
+            List<Document> bucketReviews = new ArrayList(reviews.subList(from, Math.min(from + bucketSize, reviews.size())));
+
+            Document bucket = new Document("bookId", bookId);
+            bucket.append("seq", from / bucketSize);
+            bucket.append("count", bucketReviews.size());
+            bucket.append("reviews", bucketReviews);
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+
+    private static Review toReview(Document review) {
+        Object rating = review.get("rating");
+        Date dateAdded = review.getDate("dateAdded");
+
+        return new Review(rating instanceof Number ? ((Number) rating).doubleValue() : 0.0,
+                review.getString("text"),
+                dateAdded == null ? null : dateAdded.toInstant().atZone(ZoneOffset.UTC).toLocalDate(),
+                new User(review.getString("addedByUser")));
+    }
+}
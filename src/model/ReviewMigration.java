@@ -0,0 +1,70 @@
+package model;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+
+/**
+ * Moves the reviews embedded in the book documents to buckets in the reviews
+ * collection, one book at a time.
+ *
+ * The buckets of a book are written before its embedded reviews are
+ * removed, and writing them again replaces them, so a migration that was
+ * interrupted can be run again and continues with the books that still have
+ * embedded reviews. It should be run while no client adds reviews in the
+ * embedded mode.
+ *
+ * @author Umar A & Rabi S
+ */
+public class ReviewMigration {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final MongoCollection<Document> booksCollection;
+    private final ReviewBuckets reviewBuckets;
+
+    public ReviewMigration(MongoCollection<Document> booksCollection, ReviewBuckets reviewBuckets) {
+        this.booksCollection = booksCollection;
+        this.reviewBuckets = reviewBuckets;
+    }
+
+    /**
+     * Migrate the reviews of every book that has embedded reviews.
+     *
+     * @return a {@code long} with the number of migrated books
+     */
+    public long migrate() {
+        long migrated = 0;
+
+        try (MongoCursor<Document> books = booksCollection.find(exists("reviews"))
+                .projection(include("reviews"))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+
+            while (books.hasNext()) {
+                Document book = books.next();
+                List<Document> reviews = book.getList("reviews", Document.class, new ArrayList());
+
+                double ratingSum = 0.0;
+                for (int i = 0; i < reviews.size(); i++) {
+                    Object rating = reviews.get(i).get("rating");
+                    ratingSum += rating instanceof Number ? ((Number) rating).doubleValue() : 0.0;
+                }
+
+                reviewBuckets.replaceReviews(book.getObjectId("_id"), reviews);
+                booksCollection.updateOne(eq("_id", book.getObjectId("_id")),
+                        combine(unset("reviews"), set("reviewCount", reviews.size()), set("ratingSum", ratingSum)));
+                migrated++;
+            }
+        }
+        return migrated;
+    }
+}
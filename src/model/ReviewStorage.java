@@ -0,0 +1,11 @@
+package model;
+
+/**
+ * Representation of where the reviews of a book are stored: embedded in the
+ * book document, or in buckets of the reviews collection.
+ *
+ * @author Umar A & Rabi S
+ */
+public enum ReviewStorage {
+    EMBEDDED, BUCKETED
+}
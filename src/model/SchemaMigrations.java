@@ -0,0 +1,76 @@
+package model;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.UpdateOptions;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.max;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.Document;
+
+/**
+ * Runs the one-off changes of the stored data, each once per database. The
+ * version the data has been brought up to is kept in one document of the
+ * schema collection:
+ * <pre>
+ * {_id: "booksdb", version: 2}
+ * </pre>
+ * Migration n, counted from 1, is run only while the version is below n, so
+ * a client connecting to a database that is up to date reads that one
+ * document and runs nothing.
+ *
+ * Two clients connecting at the same time can both run a migration, so a
+ * migration must give the same result when it is run again.
+ *
+ * @author Umar A & Rabi S
+ */
+public class SchemaMigrations {
+
+    private static final String SCHEMA_ID = "booksdb";
+
+    private final MongoCollection<Document> schemaCollection;
+    private final List<Runnable> migrations;
+
+    public SchemaMigrations(MongoCollection<Document> schemaCollection) {
+        this.schemaCollection = schemaCollection;
+        this.migrations = new ArrayList();
+    }
+
+    /**
+     * Add the next migration. Migrations are numbered in the order they are
+     * added, so a new migration is always added last.
+     *
+     * @param migration
+     * @return this, to add the next one
+     */
+    public SchemaMigrations add(Runnable migration) {
+        migrations.add(migration);
+        return this;
+    }
+
+    /**
+     * Get the version the stored data has been brought up to.
+     *
+     * @return an {@code int} with the number of the last migration run, 0 if
+     * none has been
+     */
+    public int getVersion() {
+        Document schema = schemaCollection.find(eq("_id", SCHEMA_ID)).first();
+        return schema == null ? 0 : schema.getInteger("version", 0);
+    }
+
+    /**
+     * Run the migrations that have not been run on this database, in order.
+     *
+     * @return an {@code int} with the number of migrations run
+     */
+    public int migrate() {
+        int version = getVersion();
+        for (int i = version; i < migrations.size(); i++) {
+            migrations.get(i).run();
+            // $max keeps the version of a client that got further meanwhile
+            schemaCollection.updateOne(eq("_id", SCHEMA_ID), max("version", i + 1), new UpdateOptions().upsert(true));
+        }
+        return Math.max(migrations.size() - version, 0);
+    }
+}
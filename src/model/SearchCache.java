@@ -0,0 +1,282 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.types.ObjectId;
+
+/**
+ * A least recently used cache of search results, keyed by the search mode and
+ * the normalized search term or rating range. Empty results are cached too.
+ *
+ * Results expire after a time to live, and are dropped earlier when a book
+ * they contain is changed or removed, or when a changed book would now match
+ * the search. The cache is bounded by the number of results and by the total
+ * number of books in them.
+ *
+ * @author Umar A & Rabi S
+ */
+public class SearchCache implements SearchCacheMXBean {
+
+    // ratings are rounded to one decimal when read, so a range matches a
+    // little more than it says
+    private static final double RATING_MARGIN = 0.05;
+
+    private final LinkedHashMap<String, Entry> entries;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final int maxBooks;
+    private int usedBooks;
+    private long version;
+
+    private long hitCount;
+    private long missCount;
+    private long invalidationCount;
+
+    public SearchCache(long ttlMillis, int maxEntries, int maxBooks) {
+        this.entries = new LinkedHashMap(16, 0.75f, true);
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.maxBooks = maxBooks;
+        this.usedBooks = 0;
+        this.version = 0;
+    }
+
+    /**
+     * Get the key of a search on a term. Title, author and keyword terms are
+     * normalized the way the database compares them, so "Tolkien " and
+     * "tolkien" share a result.
+     *
+     * @param mode
+     * @param term
+     * @return a {@code String} that identifies the search
+     */
+    public static String keyOf(SearchMode mode, String term) {
+        switch (mode) {
+            case Title:
+            case Author:
+            case Keywords:
+                return mode + ":" + SearchKeys.normalize(term);
+            case ISBN:
+                return mode + ":" + SearchKeys.normalizeIsbn(term);
+            default:
+                return mode + ":" + term;
+        }
+    }
+
+    /**
+     * Get the key of a search on a rating range.
+     *
+     * @param min
+     * @param max
+     * @return a {@code String} that identifies the search
+     */
+    public static String keyOf(double min, double max) {
+        return SearchMode.Rating + ":" + min + "-" + max;
+    }
+
+    /**
+     * Get the version of the cache, to pass to {@code put} when the search is
+     * done. The version changes on every invalidation, so a result read
+     * before a write is not cached after it.
+     *
+     * @return a {@code long} with the current version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get a cached result that has not expired and mark it as recently used.
+     *
+     * @param key
+     * @return a copy of the cached {@code List<Book>}, or null if the search
+     * is not cached
+     */
+    public synchronized List<Book> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt < System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return new ArrayList(entry.books);
+    }
+
+    /**
+     * Cache the result of a search on a term, unless the cache was
+     * invalidated since the search started.
+     *
+     * @param mode
+     * @param term
+     * @param books
+     * @param sinceVersion the version of the cache when the search started
+     */
+    public synchronized void put(SearchMode mode, String term, List<Book> books, long sinceVersion) {
+        String key = keyOf(mode, term);
+        put(key, new Entry(mode, key.substring(key.indexOf(':') + 1), 0, 0, books), sinceVersion);
+    }
+
+    /**
+     * Cache the result of a search on a rating range, unless the cache was
+     * invalidated since the search started.
+     *
+     * @param min
+     * @param max
+     * @param books
+     * @param sinceVersion the version of the cache when the search started
+     */
+    public synchronized void put(double min, double max, List<Book> books, long sinceVersion) {
+        put(keyOf(min, max), new Entry(SearchMode.Rating, null, min, max, books), sinceVersion);
+    }
+
+    /**
+     * Drop the results that contain the book, or that the book matches. Call
+     * with the book as it is after it was added or changed.
+     *
+     * @param book
+     */
+    public synchronized void bookChanged(Book book) {
+        version++;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.bookIds.contains(book.getBId()) || entry.matches(book)) {
+                usedBooks -= entry.books.size();
+                it.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Drop the results that contain the book.
+     *
+     * @param bookId the id of the removed book
+     */
+    public synchronized void bookRemoved(ObjectId bookId) {
+        version++;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            if (entry.bookIds.contains(bookId)) {
+                usedBooks -= entry.books.size();
+                it.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Remove every result from the cache.
+     */
+    public synchronized void clear() {
+        version++;
+        entries.clear();
+        usedBooks = 0;
+    }
+
+    @Override
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    @Override
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void put(String key, Entry entry, long sinceVersion) {
+        if (sinceVersion != version || entry.books.size() > maxBooks) {
+            return;
+        }
+        remove(key);
+        entries.put(key, entry);
+        usedBooks += entry.books.size();
+
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || usedBooks > maxBooks) && eldest.hasNext()) {
+            usedBooks -= eldest.next().getValue().books.size();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBooks -= removed.books.size();
+        }
+    }
+
+    private class Entry {
+
+        private final SearchMode mode;
+        private final String term;
+        private final double min;
+        private final double max;
+        private final List<Book> books;
+        private final Set<ObjectId> bookIds;
+        private final long expiresAt;
+
+        private Entry(SearchMode mode, String term, double min, double max, List<Book> books) {
+            this.mode = mode;
+            this.term = term;
+            this.min = min;
+            this.max = max;
+            this.books = new ArrayList(books);
+            this.bookIds = new HashSet();
+            for (int i = 0; i < books.size(); i++) {
+                bookIds.add(books.get(i).getBId());
+            }
+            this.expiresAt = System.currentTimeMillis() + ttlMillis;
+        }
+
+        /**
+         * Check if the book would be found by this search. Keyword searches
+         * are stemmed by the server and cannot be repeated here, so they are
+         * taken to match every book.
+         */
+        private boolean matches(Book book) {
+            switch (mode) {
+                case Title:
+                    return anyStartsWith(SearchKeys.keysOf(book.getTitle()), term);
+                case Author:
+                    return anyStartsWith(SearchKeys.keysOfAuthors(book.getAuthors()), term);
+                case ISBN:
+                    return book.getIsbn() != null && SearchKeys.normalizeIsbn(book.getIsbn()).startsWith(term);
+                case Genre:
+                    return book.getGenre().name().equals(term);
+                case Rating:
+                    return book.getRating() >= min - RATING_MARGIN && book.getRating() <= max + RATING_MARGIN;
+                default:
+                    return true;
+            }
+        }
+
+        private boolean anyStartsWith(List<String> keys, String prefix) {
+            for (int i = 0; i < keys.size(); i++) {
+                if (keys.get(i).startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package model;
+
+/**
+ * The counters of the search cache of a {@code CachedBooksDb} as shown over
+ * JMX. They count since the start of the client.
+ *
+ * @author Umar A & Rabi S
+ */
+public interface SearchCacheMXBean {
+
+    public long getHitCount();
+
+    public long getMissCount();
+
+    /**
+     * Get the number of results dropped because a book in them, or a book
+     * they would now contain, was changed or removed.
+     *
+     * @return the invalidation count
+     */
+    public long getInvalidationCount();
+}
@@ -0,0 +1,106 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the normalized keys stored on each book for prefix searches. A key
+ * is the lowercase text from the start of a word to the end, so a prefix
+ * search on the keys finds a match at the start of any word while still
+ * being an anchored, index friendly query.
+ *
+ * @author Umar A & Rabi S
+ */
+public final class SearchKeys {
+
+    private static final String REGEX_SPECIALS = "\\.[]{}()<>*+-=!?^$|";
+
+    private SearchKeys() {
+    }
+
+    /**
+     * Normalize text the same way for stored keys and search terms.
+     *
+     * @param text
+     * @return a {@code String} in lowercase with single spaces between words
+     */
+    public static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Get the keys of a text, one per word, for example "lord of the rings",
+     * "of the rings", "the rings" and "rings".
+     *
+     * @param text
+     * @return a {@code List<String>} of the keys of the text
+     */
+    public static List<String> keysOf(String text) {
+        List<String> keys = new ArrayList();
+        String normalized = normalize(text);
+
+        if (!normalized.isEmpty()) {
+            keys.add(normalized);
+            for (int i = normalized.indexOf(' '); i >= 0; i = normalized.indexOf(' ', i + 1)) {
+                keys.add(normalized.substring(i + 1));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Get the keys of all the authors of a book.
+     *
+     * @param authors
+     * @return a {@code List<String>} of the keys of every author name
+     */
+    public static List<String> keysOfAuthors(List<Author> authors) {
+        List<String> keys = new ArrayList();
+        for (int i = 0; i < authors.size(); i++) {
+            keys.addAll(keysOf(authors.get(i).getName()));
+        }
+        return keys;
+    }
+
+    /**
+     * Normalize an isbn for duplicate checks, so "978-91-0-012345-6" and
+     * "9789100123456" are the same isbn.
+     *
+     * @param isbn
+     * @return a {@code String} with the isbn without hyphens and spaces
+     */
+    public static String normalizeIsbn(String isbn) {
+        return isbn.replaceAll("[\\s-]", "").toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Get an anchored regular expression that matches keys starting with the
+     * normalized term. Characters with a meaning in regular expressions are
+     * escaped.
+     *
+     * @param term
+     * @return a {@code String} with the regular expression
+     */
+    public static String prefixPattern(String term) {
+        return "^" + escape(normalize(term));
+    }
+
+    /**
+     * Escape the characters with a meaning in regular expressions.
+     *
+     * @param text
+     * @return a {@code String} that matches the text literally
+     */
+    public static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (REGEX_SPECIALS.indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -6,5 +6,5 @@ package model;
  * @author Umar A & Rabi S
  */
 public enum SearchMode {
-    Title, ISBN, Author, Genre, Rating
+    Title, ISBN, Author, Genre, Rating, Keywords
 }
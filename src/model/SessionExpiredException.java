@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Thrown by a method that needs a logged in user when there is none, most
+ * often because the session was idle for too long. The user has to log in
+ * again.
+ *
+ * @author Umar A & Rabi S
+ */
+public class SessionExpiredException extends IllegalStateException {
+
+    public SessionExpiredException() {
+        super("Your session has expired, log in again");
+    }
+}
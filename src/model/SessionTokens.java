@@ -0,0 +1,112 @@
+package model;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The sessions of the users logged in on this client, kept in memory. A
+ * login issues a random token for the user, and while the token is in use
+ * it is enough to know who is logged in, so the logged in and ownership
+ * checks never go to the database. A session not used for the idle time
+ * expires and its user has to log in again.
+ *
+ * @author Umar A & Rabi S
+ */
+public class SessionTokens {
+
+    public static final long DEFAULT_IDLE_MILLIS = 12 * 60 * 60 * 1000L;
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random;
+    private final Map<String, Session> sessions;
+    private final long idleMillis;
+
+    public SessionTokens() {
+        this(DEFAULT_IDLE_MILLIS);
+    }
+
+    public SessionTokens(long idleMillis) {
+        this.random = new SecureRandom();
+        this.sessions = new ConcurrentHashMap();
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Start a session for a user whose password has been checked.
+     *
+     * @param user
+     * @return a {@code String} with the token of the session
+     */
+    public String issue(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        removeExpired();
+        sessions.put(token, new Session(new User(user.getUsername()), System.currentTimeMillis()));
+        return token;
+    }
+
+    /**
+     * Get the user of a session and keep the session alive.
+     *
+     * @param token
+     * @return the {@code User} of the session, without a password, or null
+     * if there is no such session or it has expired
+     */
+    public User userOf(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastUsed > idleMillis) {
+            sessions.remove(token);
+            return null;
+        }
+        session.lastUsed = now;
+        return session.user;
+    }
+
+    /**
+     * End a session.
+     *
+     * @param token
+     */
+    public void revoke(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed > idleMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private static class Session {
+
+        private final User user;
+        private volatile long lastUsed;
+
+        private Session(User user, long lastUsed) {
+            this.user = user;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package model;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+/**
+ * A CommandListener that writes every command taking longer than a
+ * threshold to a rolling log. A slow find is also explained with
+ * executionStats on a background thread, and the documents and keys it
+ * examined are logged next to the documents it returned, together with the
+ * stages of the winning plan, so a find that scans the collection shows up
+ * as COLLSCAN with docsExamined far above nReturned.
+ *
+ * A query shape, the filter without its values, is explained at most once
+ * every few minutes, since the explain runs the query once more, and the
+ * values in commands on the users collection are not logged.
+ *
+ * The log of a file name pattern is opened once, however many instances
+ * write to it.
+ *
+ * @author Umar A & Rabi S
+ */
+public class SlowCommandLog implements CommandListener {
+
+    public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+    public static final String DEFAULT_LOG_PATTERN = "booksdb-slow.%g.log";
+
+    private static final int LOG_FILE_BYTES = 1024 * 1024;
+    private static final int LOG_FILE_COUNT = 5;
+    private static final int MAX_PENDING = 1024;
+    private static final int MAX_SHAPES = 256;
+    private static final int EXPLAIN_QUEUE_SIZE = 16;
+    private static final long EXPLAIN_INTERVAL_MILLIS = 10 * 60 * 1000;
+    private static final int MAX_COMMAND_CHARS = 1000;
+
+    // the LogManager only holds loggers weakly, a collected logger would
+    // leave its file open and the next one would roll to a new file
+    private static final Map<String, Logger> FILE_LOGGERS = new HashMap();
+
+    private final long thresholdMillis;
+    private final Logger logger;
+    private final Map<Integer, StartedFind> pendingFinds;
+    private final Map<String, Long> explainedShapes;
+    private final ThreadPoolExecutor explainer;
+    private volatile MongoClient client;
+
+    public SlowCommandLog() {
+        this(DEFAULT_THRESHOLD_MILLIS, DEFAULT_LOG_PATTERN);
+    }
+
+    /**
+     * Create a log of the commands slower than the threshold.
+     *
+     * @param thresholdMillis
+     * @param logPattern the file name pattern of the log, as for a
+     * {@code FileHandler}, with %g for the number of the rolled file, or null
+     * to log through the java.util.logging configuration instead of a file
+     */
+    public SlowCommandLog(long thresholdMillis, String logPattern) {
+        this.thresholdMillis = thresholdMillis;
+        this.logger = loggerOf(logPattern);
+        this.pendingFinds = new ConcurrentHashMap();
+        this.explainedShapes = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > MAX_SHAPES;
+            }
+        };
+        // a full queue drops the explain rather than loading the server more
+        this.explainer = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(EXPLAIN_QUEUE_SIZE), runnable -> {
+                    Thread thread = new Thread(runnable, "booksdb-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        this.explainer.allowCoreThreadTimeOut(true);
+    }
+
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    /**
+     * Set the client the slow finds are explained on. The listener is part
+     * of the settings of that client, so it is only known afterwards.
+     *
+     * @param client the client, or null to stop explaining
+     */
+    public void setClient(MongoClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (!"find".equals(event.getCommandName())) {
+            return;
+        }
+        // the command is backed by the outgoing buffer, so it is copied
+        if (pendingFinds.size() < MAX_PENDING) {
+            pendingFinds.put(event.getRequestId(), new StartedFind(event.getDatabaseName(), event.getCommand().clone()));
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        StartedFind find = pendingFinds.remove(event.getRequestId());
+        long elapsedMillis = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (elapsedMillis < thresholdMillis || "explain".equals(event.getCommandName())) {
+            return;
+        }
+
+        if (find == null) {
+            logger.info(String.format("%s %d ms", event.getCommandName(), elapsedMillis));
+            return;
+        }
+        String collection = find.command.getString("find").getValue();
+        logger.info(String.format("find %s.%s %d ms %s", find.databaseName, collection, elapsedMillis,
+                describe(collection, find.command)));
+        explainLater(find, collection);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        StartedFind find = pendingFinds.remove(event.getRequestId());
+        long elapsedMillis = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        if (elapsedMillis < thresholdMillis || "explain".equals(event.getCommandName())) {
+            return;
+        }
+
+        String what = find == null ? "" : " " + describe(find.command.getString("find").getValue(), find.command);
+        logger.warning(String.format("%s failed after %d ms%s: %s", event.getCommandName(), elapsedMillis, what,
+                event.getThrowable().getMessage()));
+    }
+
+    /**
+     * Get the logger of a file name pattern, opening its file the first time.
+     */
+    private static Logger loggerOf(String logPattern) {
+        if (logPattern == null) {
+            return Logger.getLogger(SlowCommandLog.class.getName());
+        }
+        synchronized (FILE_LOGGERS) {
+            Logger logger = FILE_LOGGERS.get(logPattern);
+            if (logger == null) {
+                logger = Logger.getLogger(SlowCommandLog.class.getName() + "." + logPattern);
+                logger.setUseParentHandlers(false);
+                try {
+                    FileHandler handler = new FileHandler(logPattern, LOG_FILE_BYTES, LOG_FILE_COUNT, true);
+                    handler.setFormatter(new LineFormatter());
+                    logger.addHandler(handler);
+                } catch (IOException e) {
+                    // without a file the slow commands are not logged
+                }
+                FILE_LOGGERS.put(logPattern, logger);
+            }
+            return logger;
+        }
+    }
+
+    private void explainLater(StartedFind find, String collection) {
+        String shape = collection + " " + shapeOf(find.command.get("filter")) + " " + shapeOf(find.command.get("sort"));
+        long now = System.currentTimeMillis();
+        synchronized (explainedShapes) {
+            Long explainedAt = explainedShapes.get(shape);
+            if (explainedAt != null && now - explainedAt < EXPLAIN_INTERVAL_MILLIS) {
+                return;
+            }
+            explainedShapes.put(shape, now);
+        }
+
+        explainer.execute(() -> explain(find, collection, shape));
+    }
+
+    private void explain(StartedFind find, String collection, String shape) {
+        MongoClient explainClient = client;
+        if (explainClient == null) {
+            return;
+        }
+
+        // the session, read preference and cluster time fields belong to the
+        // original request, not to the explained command
+        BsonDocument explained = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : find.command.entrySet()) {
+            if (!field.getKey().startsWith("$") && !field.getKey().equals("lsid") && !field.getKey().equals("txnNumber")) {
+                explained.put(field.getKey(), field.getValue());
+            }
+        }
+        BsonDocument command = new BsonDocument("explain", explained).append("verbosity", new BsonString("executionStats"));
+
+        try {
+            Document result = explainClient.getDatabase(find.databaseName).runCommand(command);
+            Document stats = (Document) result.get("executionStats");
+            Document queryPlanner = (Document) result.get("queryPlanner");
+            StringBuilder stages = new StringBuilder();
+            if (queryPlanner != null) {
+                appendStages(stages, (Document) queryPlanner.get("winningPlan"));
+            }
+            logger.info(String.format("explain %s.%s %s: nReturned=%s docsExamined=%s keysExamined=%s executionTimeMillis=%s plan=%s",
+                    find.databaseName, collection, shape,
+                    stats == null ? "?" : stats.get("nReturned"),
+                    stats == null ? "?" : stats.get("totalDocsExamined"),
+                    stats == null ? "?" : stats.get("totalKeysExamined"),
+                    stats == null ? "?" : stats.get("executionTimeMillis"),
+                    stages));
+        } catch (MongoException | IllegalStateException e) {
+            // the client was closed or the server refused, the slow find
+            // itself is already logged
+            logger.log(Level.FINE, "explain failed", e);
+        }
+    }
+
+    // the stages from the top of the plan down, for example
+    // LIMIT<-FETCH<-IXSCAN(title_1)
+    private static void appendStages(StringBuilder stages, Document plan) {
+        if (plan == null) {
+            return;
+        }
+        if (stages.length() > 0) {
+            stages.append("<-");
+        }
+        stages.append(plan.getString("stage"));
+        if (plan.get("indexName") != null) {
+            stages.append('(').append(plan.get("indexName")).append(')');
+        }
+        appendStages(stages, (Document) plan.get("inputStage"));
+    }
+
+    private static String describe(String collection, BsonDocument command) {
+        BsonDocument shown = new BsonDocument();
+        for (String key : new String[]{"filter", "projection", "sort", "limit", "skip"}) {
+            if (command.containsKey(key)) {
+                shown.put(key, command.get(key));
+            }
+        }
+        String text = "users".equals(collection) ? shapeOf(shown) : shown.toJson();
+        return text.length() > MAX_COMMAND_CHARS ? text.substring(0, MAX_COMMAND_CHARS) + "..." : text;
+    }
+
+    // the field names of a document with every value replaced by ?
+    private static String shapeOf(BsonValue value) {
+        if (value == null) {
+            return "{}";
+        }
+        StringBuilder shape = new StringBuilder();
+        if (value.isDocument()) {
+            shape.append('{');
+            for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+                if (shape.length() > 1) {
+                    shape.append(", ");
+                }
+                shape.append(field.getKey()).append(": ").append(shapeOf(field.getValue()));
+            }
+            shape.append('}');
+        } else if (value.isArray()) {
+            BsonArray array = value.asArray();
+            shape.append('[');
+            for (int i = 0; i < array.size(); i++) {
+                if (i > 0) {
+                    shape.append(", ");
+                }
+                shape.append(shapeOf(array.get(i)));
+            }
+            shape.append(']');
+        } else {
+            shape.append('?');
+        }
+        return shape.toString();
+    }
+
+    private static class StartedFind {
+
+        private final String databaseName;
+        private final BsonDocument command;
+
+        private StartedFind(String databaseName, BsonDocument command) {
+            this.databaseName = databaseName;
+            this.command = command;
+        }
+    }
+
+    private static class LineFormatter extends Formatter {
+
+        @Override
+        public String format(LogRecord record) {
+            return String.format("%1$tF %1$tT.%1$tL %2$s %3$s%n", record.getMillis(), record.getLevel(), record.getMessage());
+        }
+    }
+}
@@ -9,6 +9,8 @@ import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Optional;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -47,6 +49,9 @@ public class AddBookDialog extends Dialog<Book> {
 
     private final TextField titleField = new TextField();
     private final TextField isbnField = new TextField();
+    private final Label isbnStatus = new Label();
+
+    private boolean isbnTaken;
 
     private final ArrayList<String> yearPub = new ArrayList();
     private final ArrayList<String> monthPub = new ArrayList();
@@ -142,6 +147,25 @@ public class AddBookDialog extends Dialog<Book> {
                 updateFewerAuthors(dialogPane);
             }
         });
+
+        // a complete isbn is checked as it is typed, an answer for an isbn
+        // that has been typed over since is dropped
+        isbnField.textProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+                String isbn = newValue.trim();
+                isbnTaken = false;
+                isbnStatus.setText("");
+                if (isValidIsbn(isbn)) {
+                    controller.checkIsbnAvailable(isbn, available -> {
+                        if (isbn.equals(isbnField.getText().trim())) {
+                            isbnTaken = !available;
+                            isbnStatus.setText(available ? "" : "Taken");
+                        }
+                    });
+                }
+            }
+        });
     }
 
     private void updateMoreAuthors(GridPane dPane) {
@@ -207,6 +231,9 @@ public class AddBookDialog extends Dialog<Book> {
                 invalidMsg += "Isbn, ";
                 isValid = false;
                 isbnField.clear();
+            } else if (isbnTaken) {
+                invalidMsg += "Isbn taken, ";
+                isValid = false;
             }
         }
         if (yearChoicePub.getValue() == null || monthChoicePub.getValue() == null || dayChoicePub.getValue() == null) {
@@ -263,7 +290,12 @@ public class AddBookDialog extends Dialog<Book> {
 
         dPane.add(new Label("Isbn-13:"), 0, 1);
         isbnField.setPromptText("(978/979)-XXXX-XXXXXX");
-        dPane.add(isbnField, 1, 1);
+        // the status shares the cell of the field, the author rows are
+        // removed by their position among the children of the grid
+        isbnStatus.setTextFill(Color.RED);
+        HBox isbnBox = new HBox(5);
+        isbnBox.getChildren().addAll(isbnField, isbnStatus);
+        dPane.add(isbnBox, 1, 1);
 
         dPane.add(new Label("Publish Date:"), 0, 2);
         HBox publishBox = new HBox(5);
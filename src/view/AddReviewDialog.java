@@ -31,6 +31,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.util.Callback;
 import model.Book;
+import model.BookQuery;
 import model.Genre;
 import model.Review;
 import model.SearchMode;
@@ -46,6 +47,7 @@ public class AddReviewDialog extends Dialog<Book> {
     private ButtonType buttonTypeOk;
     private ButtonType buttonTypeCancel;
     private Button searchButton;
+    private Button advancedButton;
 
     private TextField searchField;
     private TextField searchField_2;
@@ -189,6 +191,7 @@ public class AddReviewDialog extends Dialog<Book> {
         });
 
         searchButton = new Button("Search");
+        advancedButton = new Button("Advanced");
 
         // event handling (dispatch to controller)
         searchModeBox.setOnAction(new EventHandler<ActionEvent>() {
@@ -196,16 +199,16 @@ public class AddReviewDialog extends Dialog<Book> {
             public void handle(ActionEvent event) {
                 if (searchModeBox.getValue() == SearchMode.Genre) {
                     searchViewBox.getChildren().clear();
-                    searchViewBox.getChildren().addAll(searchModeBox, genreBox, searchButton);
+                    searchViewBox.getChildren().addAll(searchModeBox, genreBox, searchButton, advancedButton);
                     searchViewBox.requestFocus();
                 } else if (searchModeBox.getValue() == SearchMode.Rating) {
                     searchViewBox.getChildren().clear();
-                    searchViewBox.getChildren().addAll(searchModeBox, ratingGrid, searchButton);
+                    searchViewBox.getChildren().addAll(searchModeBox, ratingGrid, searchButton, advancedButton);
                     searchViewBox.setStyle("-fx-alignment: CENTER-LEFT;");
                     searchViewBox.requestFocus();
                 } else if (searchModeBox.getValue() == SearchMode.Author) {
                     searchViewBox.getChildren().clear();
-                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchField_2, searchButton);
+                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchField_2, searchButton, advancedButton);
                     searchViewBox.requestFocus();
                     searchField.clear();
                     searchField_2.clear();
@@ -213,14 +216,14 @@ public class AddReviewDialog extends Dialog<Book> {
                     searchField.setPrefWidth(130.0);
                 } else if (searchModeBox.getValue() == SearchMode.ISBN) {
                     searchViewBox.getChildren().clear();
-                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton);
+                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton, advancedButton);
                     searchField.clear();
                     searchField.setPromptText("(978/979)-XXXX-XXXXXX");
                     searchField.setPrefWidth(265.0);
                     searchViewBox.requestFocus();
                 } else {
                     searchViewBox.getChildren().clear();
-                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton);
+                    searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton, advancedButton);
                     searchField.clear();
                     searchField.setPromptText("Search Title...");
                     searchField.setPrefWidth(265.0);
@@ -240,7 +243,7 @@ public class AddReviewDialog extends Dialog<Book> {
                 } else if (mode == SearchMode.Rating) {
                     controller.onSearchRatingSelected(minRatingField.getText(), maxRatingField.getText());
                 } else if (mode == SearchMode.Author) {
-                    searchFor = searchField.getText().trim() + searchField_2.getText().trim();
+                    searchFor = (searchField.getText().trim() + " " + searchField_2.getText().trim()).trim();
                     controller.onSearchSelected(searchFor, mode);
                 } else {
                     controller.onSearchSelected(searchFor, mode);
@@ -248,7 +251,19 @@ public class AddReviewDialog extends Dialog<Book> {
             }
         });
 
-        searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton);
+        advancedButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                QueryDialog queryDialog = new QueryDialog(controller);
+                Optional<BookQuery> result = queryDialog.showAndWait();
+
+                if (result.isPresent()) {
+                    controller.onQuerySelected(result.get());
+                }
+            }
+        });
+
+        searchViewBox.getChildren().addAll(searchModeBox, searchField, searchButton, advancedButton);
         return searchViewBox;
     }
 
@@ -295,11 +310,7 @@ public class AddReviewDialog extends Dialog<Book> {
         ratingCol.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Book, String> data) {
-                if(data.getValue().getRating() > 0.0){
-                    return new SimpleStringProperty(data.getValue().getRating() + "/5.0");
-                }
-                return new SimpleStringProperty("Not Set");
-
+                return new SimpleStringProperty(BookCells.ratingText(data.getValue()));
             }
 
         }
@@ -308,29 +319,21 @@ public class AddReviewDialog extends Dialog<Book> {
         bookAddedByCol.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Book, String> data) {
-                return new SimpleStringProperty(data.getValue().getUser().getUsername());
+                return new SimpleStringProperty(BookCells.addedByText(data.getValue()));
             }
         });
 
         authorNameCol.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Book, String> data) {
-                String authorNames = "";
-                for (int i = 0; i < data.getValue().getAuthors().size(); i++) {
-                    authorNames += data.getValue().getAuthors().get(i).getName() + "\n";
-                }
-                return new SimpleStringProperty(authorNames);
+                return new SimpleStringProperty(BookCells.authorNamesText(data.getValue()));
             }
         });
 
         authorDobCol.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Book, String> data) {
-                String authorDobs = "";
-                for (int i = 0; i < data.getValue().getAuthors().size(); i++) {
-                    authorDobs += data.getValue().getAuthors().get(i).getDateOfBirth() + "\n";
-                }
-                return new SimpleStringProperty(authorDobs);
+                return new SimpleStringProperty(BookCells.authorBirthDatesText(data.getValue()));
             }
         });
 
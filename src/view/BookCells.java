@@ -0,0 +1,74 @@
+package view;
+
+import java.util.List;
+import model.Author;
+import model.Book;
+
+/**
+ * The text shown in the book table cells that are not a single property of
+ * the book. Kept apart from the tables, which all show books the same way,
+ * so it can be measured without starting JavaFX.
+ *
+ * @author Umar A & Rabi S
+ */
+public final class BookCells {
+
+    private BookCells() {
+    }
+
+    /**
+     * @param book
+     * @return a {@code String} like "4.5/5.0", or "Not Set" for a book without
+     * a rating
+     */
+    public static String ratingText(Book book) {
+        if (book.getRating() > 0.0) {
+            return new StringBuilder(7).append(book.getRating()).append("/5.0").toString();
+        }
+        return "Not Set";
+    }
+
+    /**
+     * @param book
+     * @return a {@code String} with the number of reviews
+     */
+    public static String nrOfReviewsText(Book book) {
+        return Integer.toString(book.getNrOfReviews());
+    }
+
+    /**
+     * @param book
+     * @return a {@code String} with the name of the user that added the book
+     */
+    public static String addedByText(Book book) {
+        return book.getUser().getUsername();
+    }
+
+    /**
+     * @param book
+     * @return a {@code String} with the name of each author on a line of its
+     * own
+     */
+    public static String authorNamesText(Book book) {
+        List<Author> authors = book.getAuthors();
+        StringBuilder names = new StringBuilder(authors.size() * 24);
+        for (int i = 0; i < authors.size(); i++) {
+            names.append(authors.get(i).getName()).append('\n');
+        }
+        return names.toString();
+    }
+
+    /**
+     * @param book
+     * @return a {@code String} with the date of birth of each author on a line
+     * of its own, in the order of {@code authorNamesText}
+     */
+    public static String authorBirthDatesText(Book book) {
+        List<Author> authors = book.getAuthors();
+        StringBuilder dates = new StringBuilder(authors.size() * 11);
+        for (int i = 0; i < authors.size(); i++) {
+            dates.append(authors.get(i).getDateOfBirth()).append('\n');
+        }
+        return dates.toString();
+    }
+}
@@ -1,12 +1,26 @@
 package view;
 
+import com.mongodb.MongoException;
 import model.SearchMode;
+import model.ExecutorBooksDb;
 import model.Book;
+import model.BookChangeListener;
+import model.BookQuery;
 import model.BooksDbInterface;
+import model.ExportReport;
+import model.ImportReport;
+import model.SessionExpiredException;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import javafx.application.Platform;
 import static javafx.scene.control.Alert.AlertType.*;
 import model.User;
+import org.bson.types.ObjectId;
 
 /**
  * The controller is responsible for handling user requests and update the view
@@ -18,34 +32,170 @@ public final class Controller {
 
     private final DbView booksView;
     private final BooksDbInterface booksDb;
+    private final TaskScheduler scheduler;
+    private final ExecutorBooksDb executorDb;
+
+    // continues a future on the JavaFX application thread
+    private static final Executor FX_THREAD = Platform::runLater;
+
+    // tasks that replace the content of the books table supersede each other
+    private static final String TABLE_TASK = "booksTable";
+
+    private static final int PAGE_SIZE = 100;
+    // the most books shown for a search as you type
+    private static final int SUGGEST_LIMIT = 200;
+    private ObjectId lastPageId;
+    private boolean hasMorePages;
+    private boolean isLoadingPage;
+    private boolean isShowingAllBooks;
+    // the number of the latest page load, only it may clear isLoadingPage
+    private long pageLoadNr;
 
     public Controller(BooksDbInterface booksDb, DbView booksView) {
         this.booksDb = booksDb;
         this.booksView = booksView;
+        this.scheduler = new TaskScheduler(4, 64, () -> Platform.runLater(
+                () -> booksView.showAlertAndWait("Too many requests at once, try again", WARNING, "BUSY")));
+        this.executorDb = new ExecutorBooksDb(booksDb);
         initLogin();
     }
 
     protected void initLogin() {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 booksDb.loginAsGuest();
+                booksDb.watchBooks(new BookChangeListener() {
+                    @Override
+                    public void bookChanged(Book book) {
+                        Platform.runLater(() -> applyBookChange(book));
+                    }
+
+                    @Override
+                    public void bookRemoved(ObjectId bookId) {
+                        Platform.runLater(() -> booksView.removeBookFromTable(bookId));
+                    }
+
+                    @Override
+                    public void booksResynced() {
+                        Platform.runLater(() -> reloadAfterResync());
+                    }
+                });
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Patches the table with a book changed by this or another client. A book
+     * that is not shown is only added when the whole list is shown and its
+     * last page is loaded, since new books come last.
+     */
+    private void applyBookChange(Book book) {
+        if (booksView.isBookInTable(book.getBId()) || (isShowingAllBooks && !hasMorePages && !isLoadingPage)) {
+            booksView.updateBookInTable(book);
+        }
+    }
+
+    /**
+     * Reloads the list of all books when changes to it may have been missed.
+     * Search results are left as they are, the next search reads them again.
+     */
+    private void reloadAfterResync() {
+        if (isShowingAllBooks) {
+            refreshBooksInView();
+        }
     }
 
+    /**
+     * Shows the first page of the books. Like the other methods that change
+     * the paging state, only called on the JavaFX thread.
+     */
     protected void refreshBooksInView() {
-        new Thread() {
+        loadPage(null, false);
+    }
+
+    /**
+     * Fetches the page after the last book shown by refreshBooksInView, when
+     * the table is scrolled to the bottom.
+     */
+    protected void loadNextBooksPage() {
+        if (!hasMorePages || isLoadingPage) {
+            return;
+        }
+        loadPage(lastPageId, true);
+    }
+
+    /**
+     * Fetches a page on the pool. The page load ends on the JavaFX thread
+     * however the fetch ends, or at once if the task is rejected, so a
+     * superseded or failed load does not stop the paging.
+     */
+    private void loadPage(ObjectId afterId, boolean append) {
+        isLoadingPage = true;
+        long loadNr = ++pageLoadNr;
+        boolean submitted = scheduler.submitLatest(TABLE_TASK, new TaskScheduler.SupersedableTask() {
             @Override
-            public void run() {
-                List<Book> list = booksDb.getTheBooks();
-                Platform.runLater(() -> booksView.displayBooks(list));
+            public void run(BooleanSupplier isSuperseded) {
+                List<Book> page = null;
+                try {
+                    page = booksDb.getTheBooks(afterId, PAGE_SIZE);
+                } catch (MongoException e) {
+                    showDbError(e);
+                } finally {
+                    List<Book> loaded = page;
+                    Platform.runLater(() -> endPageLoad(loadNr, loaded, append, isSuperseded));
+                }
             }
-        }.start();
+        });
+        if (!submitted) {
+            isLoadingPage = false;
+        }
+    }
+
+    private void endPageLoad(long loadNr, List<Book> page, boolean append, BooleanSupplier isSuperseded) {
+        if (loadNr == pageLoadNr) {
+            isLoadingPage = false;
+        }
+        if (page == null || isSuperseded.getAsBoolean()) {
+            return;
+        }
+        if (append) {
+            booksView.appendBooks(page);
+        } else {
+            booksView.displayBooks(page);
+        }
+        isShowingAllBooks = true;
+        hasMorePages = page.size() == PAGE_SIZE;
+        if (!page.isEmpty()) {
+            lastPageId = page.get(page.size() - 1).getBId();
+        }
+    }
+
+    /**
+     * Runs a search that replaces the table. A page load it supersedes may
+     * never run, so the page load is ended here.
+     */
+    private void submitSearch(TaskScheduler.SupersedableTask search) {
+        pageLoadNr++;
+        isLoadingPage = false;
+        scheduler.submitLatest(TABLE_TASK, search);
+    }
+
+    private void displaySearchResult(List<Book> result, BooleanSupplier isSuperseded) {
+        if (isSuperseded.getAsBoolean()) {
+            return;
+        }
+        if (result == null || result.isEmpty()) {
+            booksView.showAlertAndWait("No results found", INFORMATION, "INFORMATION");
+        } else {
+            isShowingAllBooks = false;
+            hasMorePages = false;
+            booksView.displayBooks(result);
+        }
     }
 
     protected void handleLoginAsGuestEvent() {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (booksDb.isLoggedIn()) {
@@ -54,79 +204,132 @@ public final class Controller {
                     Platform.runLater(() -> booksView.showAlertAndWait("You are logged out", INFORMATION, "LOG OUT"));
                 }
             }
-        }.start();
+        });
     }
 
     
 
     protected void handleDisconnectEvent() {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 booksDb.disconnect();
             }
-        }.start();
+        });
+        scheduler.shutdown();
+        executorDb.shutdown();
     }
 
     protected void handleAddBookDialogEvent(Book book, boolean loggedCheck) {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (booksDb.isLoggedIn() && !loggedCheck) {
                     Platform.runLater(() -> booksView.showAddBookDialog());
                 } else if (booksDb.isLoggedIn() && loggedCheck) {
-                    booksDb.addBookToDb(book);
-                    List<Book> list = booksDb.getTheBooks();
-                    Platform.runLater(() -> booksView.displayBooks(list));
+                    try {
+                        Book added = booksDb.addBookToDb(book);
+                        Platform.runLater(() -> applyBookChange(added));
+                    } catch (SessionExpiredException e) {
+                        Platform.runLater(() -> showSessionExpired());
+                    } catch (IllegalArgumentException e) {
+                        Platform.runLater(() -> booksView.showAddBookDialog());
+                        Platform.runLater(() -> booksView.showAlertAndWait("A book with this isbn already exists", INFORMATION, "ISBN TAKEN"));
+                    }
                 } else {
                     Platform.runLater(() -> booksView.showAlertAndWait("You need to log in to add a book", INFORMATION, "NOT LOGGED IN"));
                 }
             }
-        }.start();
+        });
     }
 
-    protected void handleRemoveBookDialogEvent(Book book, boolean loggedCheck) {
-        new Thread() {
+    protected void handleImportBooksEvent(File feed, boolean loggedCheck) {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (booksDb.isLoggedIn() && !loggedCheck) {
-                    Platform.runLater(() -> booksView.showRemoveBookDialog());
+                    Platform.runLater(() -> booksView.showImportFileChooser());
                 } else if (booksDb.isLoggedIn() && loggedCheck) {
-                    if (booksDb.deleteBookFromDb(book) != null) {
-                        List<Book> list = booksDb.getTheBooks();
-                        Platform.runLater(() -> booksView.displayBooks(list));
-                    } else {
-                        Platform.runLater(() -> booksView.showAddReviewDialog());
-                        Platform.runLater(() -> booksView.showAlertAndWait("This is not your book.", INFORMATION, "NOT YOUR BOOK"));
+                    try {
+                        ImportReport report = booksDb.importBooks(feed);
+                        Platform.runLater(() -> {
+                            refreshBooksInView();
+                            booksView.showAlertAndWait(report.toString(), INFORMATION, "IMPORT DONE");
+                        });
+                    } catch (SessionExpiredException e) {
+                        Platform.runLater(() -> showSessionExpired());
+                    } catch (IOException | MongoException e) {
+                        Platform.runLater(() -> booksView.showAlertAndWait(e.getMessage()
+                                + "\n\nImport the same file again to continue where it stopped.", ERROR, "IMPORT FAILED"));
                     }
                 } else {
-                    Platform.runLater(() -> booksView.showAlertAndWait("You need to log in to remove a book", INFORMATION, "NOT LOGGED IN"));
+                    Platform.runLater(() -> booksView.showAlertAndWait("You need to log in to import books", INFORMATION, "NOT LOGGED IN"));
                 }
             }
-        }.start();
+        });
     }
 
-    protected void handleAddReviewDialogEvent(Book review, boolean loggedCheck) {
-        new Thread() {
+    protected void handleExportBooksEvent(File target) {
+        scheduler.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ExportReport report = booksDb.exportBooks(target);
+                    Platform.runLater(() -> booksView.showAlertAndWait(report.toString(), INFORMATION, "EXPORT DONE"));
+                } catch (IOException | MongoException e) {
+                    Platform.runLater(() -> booksView.showAlertAndWait(e.getMessage(), ERROR, "EXPORT FAILED"));
+                }
+            }
+        });
+    }
+
+    protected void handleRemoveBookDialogEvent(Book book, boolean loggedCheck) {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (booksDb.isLoggedIn() && !loggedCheck) {
-                    Platform.runLater(() -> booksView.showAddReviewDialog());
+                    Platform.runLater(() -> booksView.showRemoveBookDialog());
                 } else if (booksDb.isLoggedIn() && loggedCheck) {
-                    booksDb.addReviewToDb(review);
-                    List<Book> list = booksDb.getTheBooks();
-                    Platform.runLater(() -> booksView.displayBooks(list));
+                    Book deleted;
+                    try {
+                        deleted = booksDb.deleteBookFromDb(book);
+                    } catch (SessionExpiredException e) {
+                        Platform.runLater(() -> showSessionExpired());
+                        return;
+                    }
+                    if (deleted != null) {
+                        Platform.runLater(() -> booksView.removeBookFromTable(deleted));
+                    } else {
+                        Platform.runLater(() -> booksView.showAddReviewDialog());
+                        Platform.runLater(() -> booksView.showAlertAndWait("This is not your book.", INFORMATION, "NOT YOUR BOOK"));
+                    }
                 } else {
-                    Platform.runLater(() -> booksView.showAlertAndWait("You need to log in to review a book", INFORMATION, "NOT LOGGED IN"));
+                    Platform.runLater(() -> booksView.showAlertAndWait("You need to log in to remove a book", INFORMATION, "NOT LOGGED IN"));
                 }
             }
-        }.start();
+        });
+    }
+
+    protected void handleAddReviewDialogEvent(Book review, boolean loggedCheck) {
+        if (executorDb.isLoggedIn() && !loggedCheck) {
+            booksView.showAddReviewDialog();
+        } else if (executorDb.isLoggedIn() && loggedCheck) {
+            executorDb.addReviewToDb(review)
+                    .thenAcceptAsync(reviewed -> {
+                        if (reviewed != null) {
+                            booksView.updateBookInTable(reviewed);
+                        }
+                    }, FX_THREAD)
+                    .exceptionally(this::showDbError);
+        } else {
+            booksView.showAlertAndWait("You need to log in to review a book", INFORMATION, "NOT LOGGED IN");
+        }
     }
     
     protected void onSearchSelected(String searchFor, SearchMode mode) {
-        new Thread() {
+        submitSearch(new TaskScheduler.SupersedableTask() {
             @Override
-            public void run() {
+            public void run(BooleanSupplier isSuperseded) {
                 if (searchFor != null && searchFor.length() > 0) {
                     List<Book> result;
                     switch (mode) {
@@ -142,44 +345,75 @@ public final class Controller {
                         case Genre:
                             result = booksDb.searchBooksByGenre(searchFor);
                             break;
+                        case Keywords:
+                            result = booksDb.searchBooksByKeywords(searchFor);
+                            break;
                         default:
                             result = null;
                     }
-                    if (result == null || result.isEmpty()) {
-                        Platform.runLater(() -> booksView.showAlertAndWait("No results found", INFORMATION, "INFORMATION"));
-                    } else {
-                        Platform.runLater(() -> booksView.displayBooks(result));
-                    }
+                    Platform.runLater(() -> displaySearchResult(result, isSuperseded));
                 } else {
                     Platform.runLater(() -> booksView.showAlertAndWait("Enter a search string", WARNING, "WARNING"));
                 }
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Shows the books starting with the typed text. Called after a pause in
+     * the typing; a lookup still running for earlier text is superseded.
+     */
+    protected void onSearchTyped(String prefix, SearchMode mode) {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            return;
+        }
+        submitSearch(new TaskScheduler.SupersedableTask() {
+            @Override
+            public void run(BooleanSupplier isSuperseded) {
+                List<Book> result = booksDb.suggestBooks(prefix, mode, SUGGEST_LIMIT);
+                Platform.runLater(() -> {
+                    if (!isSuperseded.getAsBoolean()) {
+                        isShowingAllBooks = false;
+                        hasMorePages = false;
+                        booksView.displayBooks(result);
+                    }
+                });
+            }
+        });
     }
 
     protected void onSearchRatingSelected(String min, String max) {
-        new Thread() {
+        submitSearch(new TaskScheduler.SupersedableTask() {
             @Override
-            public void run() {
+            public void run(BooleanSupplier isSuperseded) {
                 if (min != null && max != null) {
                     {
                         double minD = Double.parseDouble((min.replace(",", ".")));
                         double maxD = Double.parseDouble((max.replace(",", ".")));
                         if (minD >= 0.0 && maxD <= 5.0) {
                             List<Book> result = booksDb.searchBooksByRating(minD, maxD);
-
-                            if (result == null || result.isEmpty()) {
-                                Platform.runLater(() -> booksView.showAlertAndWait("No results found", INFORMATION, "INFORMATION"));
-                            } else {
-                                Platform.runLater(() -> booksView.displayBooks(result));
-                            }
+                            Platform.runLater(() -> displaySearchResult(result, isSuperseded));
                         }
                     }
                 } else {
                     Platform.runLater(() -> booksView.showAlertAndWait("Enter a search string", WARNING, "WARNING"));
                 }
             }
-        }.start();
+        });
+    }
+
+    protected void onQuerySelected(BookQuery query) {
+        submitSearch(new TaskScheduler.SupersedableTask() {
+            @Override
+            public void run(BooleanSupplier isSuperseded) {
+                if (query != null && !query.isEmpty()) {
+                    List<Book> result = booksDb.searchBooks(query);
+                    Platform.runLater(() -> displaySearchResult(result, isSuperseded));
+                } else {
+                    Platform.runLater(() -> booksView.showAlertAndWait("Enter a search string", WARNING, "WARNING"));
+                }
+            }
+        });
     }
 
     protected void handleInvalidInput(String invalidMsg) {
@@ -187,7 +421,7 @@ public final class Controller {
     }
     
      protected boolean isBookReviewed(Book book) {
-        if (book.getReviews().size() > 0) {
+        if (book.getNrOfReviews() > 0) {
             return true;
         } else {
             booksView.showAlertAndWait("This book has no reviews", INFORMATION, "NO REVIEWS");
@@ -195,16 +429,29 @@ public final class Controller {
         }
     }
 
+    protected void showReviews(Book book) {
+        executorDb.getReviewsOfBook(book)
+                .thenAcceptAsync(reviews -> booksView.showDisplayReviewsDialog(book, reviews), FX_THREAD)
+                .exceptionally(this::showDbError);
+    }
+
     protected void isUsernameAvailable(User newUser, boolean loggedCheck) {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (!booksDb.isLoggedIn() && !loggedCheck) {
                     Platform.runLater(() -> booksView.showCreateAccDialog());
                 } else if (!booksDb.isLoggedIn() && loggedCheck) {
+                    boolean created = false;
                     if (booksDb.isUsernameAvailable(newUser)) {
-                        booksDb.createAccToDb(newUser);
-                    } else {
+                        try {
+                            booksDb.createAccToDb(newUser);
+                            created = true;
+                        } catch (IllegalArgumentException e) {
+                            // taken by another client since the check
+                        }
+                    }
+                    if (!created) {
                         Platform.runLater(() -> booksView.showCreateAccDialog());
                         Platform.runLater(() -> booksView.showAlertAndWait("Username Taken", INFORMATION, ""));
                     }
@@ -212,18 +459,19 @@ public final class Controller {
                     Platform.runLater(() -> booksView.showAlertAndWait("You are already logged in", INFORMATION, "ALREADY LOGGED IN"));
                 }
             }
-        }.start();
+        });
     }
 
     protected void isUser(User user, boolean loggedCheck) {
-        new Thread() {
+        scheduler.submit(new Runnable() {
             @Override
             public void run() {
                 if (!booksDb.isLoggedIn() && !loggedCheck) {
                     Platform.runLater(() -> booksView.showLoginDialog());
                 } else if (!booksDb.isLoggedIn() && loggedCheck) {
-                    if (booksDb.isUser(user)) {
-                        User current = booksDb.loginAsUser(user);
+                    // the credentials are checked by the login itself
+                    User current = booksDb.loginAsUser(user);
+                    if (current != null) {
                         Platform.runLater(() -> booksView.setCurrentUsername(current.getUsername()));
                     } else {
                         Platform.runLater(() -> booksView.showLoginDialog());
@@ -233,21 +481,63 @@ public final class Controller {
                     Platform.runLater(() -> booksView.showAlertAndWait("You are already logged in", INFORMATION, "ALREADY LOGGED IN"));
                 }
             }
-        }.start();
+        });
+    }
+
+    /**
+     * Checks a username as it is typed in the create account dialog. The
+     * answer is passed on on the JavaFX thread, a check that failed is left
+     * to the submit.
+     */
+    protected void checkUsernameAvailable(String username, Consumer<Boolean> onAnswer) {
+        executorDb.isUsernameAvailable(new User(username))
+                .thenAcceptAsync(onAnswer, FX_THREAD)
+                .exceptionally(error -> null);
+    }
+
+    /**
+     * Checks an isbn as it is typed in the add book dialog, the same way.
+     */
+    protected void checkIsbnAvailable(String isbn, Consumer<Boolean> onAnswer) {
+        executorDb.isIsbnAvailable(isbn)
+                .thenAcceptAsync(onAnswer, FX_THREAD)
+                .exceptionally(error -> null);
     }
 
     protected void isBookReviewedByUser(Book bookToBeReviewed) {
-        new Thread() {
-            @Override
-            public void run() {
-                if (booksDb.isBookReviewedByUser(bookToBeReviewed)) {
-                    Platform.runLater(() -> booksView.showAddReviewDialog());
-                    Platform.runLater(() -> booksView.showAlertAndWait("You have already reviewed this book", INFORMATION, "CHOOSE A DIFFERENT BOOK"));
-                } else {
-                    Platform.runLater(() -> booksView.showWriteReviewDialog(bookToBeReviewed));
-                }
-            }
-        }.start();
+        executorDb.isBookReviewedByUser(bookToBeReviewed)
+                .thenAcceptAsync(isReviewed -> {
+                    if (isReviewed) {
+                        booksView.showAddReviewDialog();
+                        booksView.showAlertAndWait("You have already reviewed this book", INFORMATION, "CHOOSE A DIFFERENT BOOK");
+                    } else {
+                        booksView.showWriteReviewDialog(bookToBeReviewed);
+                    }
+                }, FX_THREAD)
+                .exceptionally(this::showDbError);
+    }
+
+    /**
+     * Shows the error of a failed asynchronous call. The error is wrapped in
+     * a {@code CompletionException} by the stage that failed.
+     */
+    private Void showDbError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof SessionExpiredException) {
+            Platform.runLater(() -> showSessionExpired());
+        } else {
+            Platform.runLater(() -> booksView.showAlertAndWait(cause.getMessage(), ERROR, "DATABASE ERROR"));
+        }
+        return null;
+    }
+
+    /**
+     * Tells the user that the session has expired and asks for a new login.
+     */
+    private void showSessionExpired() {
+        booksView.setCurrentUsername("Guest");
+        booksView.showAlertAndWait("Your session has expired, log in again", INFORMATION, "SESSION EXPIRED");
+        booksView.showLoginDialog();
     }
 
    
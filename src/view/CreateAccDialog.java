@@ -8,6 +8,8 @@ package view;
 import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
 import javafx.event.Event;
@@ -24,6 +26,7 @@ import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
 import javafx.util.Callback;
 import model.User;
 
@@ -41,6 +44,9 @@ public class CreateAccDialog extends Dialog<User> {
     private final TextField usernameField = new TextField();
     private final PasswordField passwordField = new PasswordField();
     private final PasswordField checkPasswordField = new PasswordField();
+    private final Label usernameStatus = new Label();
+
+    private boolean usernameTaken;
 
     private String invalidMsg;
 
@@ -62,6 +68,9 @@ public class CreateAccDialog extends Dialog<User> {
         usernameField.setPromptText("Username");
         dPane.add(usernameField, 1, 3);
 
+        usernameStatus.setTextFill(Color.RED);
+        dPane.add(usernameStatus, 2, 3);
+
         dPane.add(new Label("Password:"), 0, 4);
         passwordField.setPromptText("Password");
         passwordField.setPrefWidth(usernameField.getWidth());
@@ -95,6 +104,25 @@ public class CreateAccDialog extends Dialog<User> {
             }
         });
 
+        // the username is checked as it is typed, an answer for a username
+        // that has been typed over since is dropped
+        usernameField.textProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+                String username = newValue.trim();
+                usernameTaken = false;
+                usernameStatus.setText("");
+                if (!username.isEmpty()) {
+                    controller.checkUsernameAvailable(username, available -> {
+                        if (username.equals(usernameField.getText().trim())) {
+                            usernameTaken = !available;
+                            usernameStatus.setText(available ? "" : "Taken");
+                        }
+                    });
+                }
+            }
+        });
+
         Button okButton = (Button) this.getDialogPane().lookupButton(buttonTypeOk);
         okButton.addEventFilter(ActionEvent.ACTION, new EventHandler() {
             @Override
@@ -113,6 +141,9 @@ public class CreateAccDialog extends Dialog<User> {
         if (usernameField.getText().trim().isEmpty()) {
             invalidMsg += "Username, ";
             isValid = false;
+        } else if (usernameTaken) {
+            invalidMsg += "Username taken, ";
+            isValid = false;
         }
         if (passwordField.getText().isEmpty()) {
             invalidMsg += "Password, ";
@@ -2,10 +2,13 @@ package view;
 
 import model.SearchMode;
 import model.Book;
-import model.BooksDb;
+import model.BookQuery;
+import model.BooksDbInterface;
+import java.io.File;
 import java.sql.Date;
 import java.util.List;
 import java.util.Optional;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.value.ChangeListener;
@@ -15,6 +18,8 @@ import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
@@ -22,6 +27,8 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.Skin;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableColumn.CellDataFeatures;
@@ -33,10 +40,14 @@ import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.util.Callback;
+import javafx.util.Duration;
 
 import model.Genre;
+import model.Review;
 import model.User;
+import org.bson.types.ObjectId;
 
 /**
  * The main pane for the view, extending VBox and including the menus. An
@@ -46,6 +57,9 @@ import model.User;
  */
 public class DbView extends VBox {
 
+    // how long the typing must pause before the search as you type runs
+    private static final int TYPING_PAUSE_MILLIS = 150;
+
     private final Controller controller;
     private TableView<Book> booksTable;
     private ObservableList<Book> booksInTable; // the data backing the table view
@@ -53,6 +67,7 @@ public class DbView extends VBox {
     private ComboBox<SearchMode> searchModeBox;
     private TextField searchField;
     private Button searchButton;
+    private PauseTransition typingPause;
     private Button returnButton;
     private Button reviewButton;
     private Label currentUser;
@@ -66,7 +81,7 @@ public class DbView extends VBox {
     protected AddReviewDialog addReviewDialog;
     protected DisplayReviewsDialog displayReviewsDialog;
 
-    public DbView(BooksDb booksDb) {
+    public DbView(BooksDbInterface booksDb) {
         controller = new Controller(booksDb, this);
         init();
     }
@@ -82,6 +97,71 @@ public class DbView extends VBox {
         booksInTable.addAll(books);
     }
 
+    /**
+     * Add the next page of books to the end of the booksTable table view.
+     *
+     * @param books the books to append
+     */
+    protected void appendBooks(List<Book> books) {
+        booksInTable.addAll(books);
+    }
+
+    /**
+     * Replace the row of a book that was changed in the database, matched by
+     * its id, or add the book if it is not in the booksTable table view.
+     *
+     * @param book the added or changed book
+     */
+    protected void updateBookInTable(Book book) {
+        int index = indexOfBook(book.getBId());
+        if (index >= 0) {
+            booksInTable.set(index, book);
+        } else {
+            booksInTable.add(book);
+        }
+    }
+
+    /**
+     * Remove the row of a book that was deleted from the database, matched by
+     * its id.
+     *
+     * @param book the deleted book
+     */
+    protected void removeBookFromTable(Book book) {
+        removeBookFromTable(book.getBId());
+    }
+
+    /**
+     * Remove the row of a book that was deleted from the database.
+     *
+     * @param bookId the id of the deleted book
+     */
+    protected void removeBookFromTable(ObjectId bookId) {
+        int index = indexOfBook(bookId);
+        if (index >= 0) {
+            booksInTable.remove(index);
+        }
+    }
+
+    /**
+     * Check if a book is shown in the booksTable table view.
+     *
+     * @param bookId the id of the book
+     * @return a {@code boolean} if the book has a row in the table
+     */
+    protected boolean isBookInTable(ObjectId bookId) {
+        return indexOfBook(bookId) >= 0;
+    }
+
+    private int indexOfBook(ObjectId bookId) {
+        for (int i = 0; i < booksInTable.size(); i++) {
+            if (booksInTable.get(i).getBId().equals(bookId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Notify user on input error or exceptions.
      *
@@ -172,10 +252,7 @@ public class DbView extends VBox {
         ratingCol.setCellValueFactory(new Callback<CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(CellDataFeatures<Book, String> data) {
-                if (data.getValue().getRating() == 0.0) {
-                    return new SimpleStringProperty("Not Set");
-                }
-                return new SimpleStringProperty(data.getValue().getRating() + "/5.0");
+                return new SimpleStringProperty(BookCells.ratingText(data.getValue()));
             }
         }
         );
@@ -184,7 +261,7 @@ public class DbView extends VBox {
                 new Callback<CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(CellDataFeatures<Book, String> data) {
-                return new SimpleStringProperty(String.valueOf(data.getValue().getReviews().size()));
+                return new SimpleStringProperty(BookCells.nrOfReviewsText(data.getValue()));
             }
         }
         );
@@ -193,7 +270,7 @@ public class DbView extends VBox {
                 new Callback<CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(CellDataFeatures<Book, String> data) {
-                return new SimpleStringProperty(data.getValue().getUser().getUsername());
+                return new SimpleStringProperty(BookCells.addedByText(data.getValue()));
             }
         }
         );
@@ -202,11 +279,7 @@ public class DbView extends VBox {
                 new Callback<CellDataFeatures<Book, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(CellDataFeatures<Book, String> data) {
-                String authorNames = "";
-                for (int i = 0; i < data.getValue().getAuthors().size(); i++) {
-                    authorNames += data.getValue().getAuthors().get(i).getName() + "\n";
-                }
-                return new SimpleStringProperty(authorNames);
+                return new SimpleStringProperty(BookCells.authorNamesText(data.getValue()));
             }
         }
         );
@@ -216,11 +289,7 @@ public class DbView extends VBox {
             @Override
             public ObservableValue<String> call(CellDataFeatures<Book, String> data
             ) {
-                String authorDobs = "";
-                for (int i = 0; i < data.getValue().getAuthors().size(); i++) {
-                    authorDobs += data.getValue().getAuthors().get(i).getDateOfBirth() + "\n";
-                }
-                return new SimpleStringProperty(authorDobs);
+                return new SimpleStringProperty(BookCells.authorBirthDatesText(data.getValue()));
             }
         }
         );
@@ -228,6 +297,29 @@ public class DbView extends VBox {
         // associate the table view with the data
         booksTable.setItems(booksInTable);
 
+        // the scroll bar only exists once the table has a skin
+        booksTable.skinProperty().addListener(new ChangeListener<Skin<?>>() {
+            @Override
+            public void changed(ObservableValue<? extends Skin<?>> observableValue, Skin<?> oldSkin, Skin<?> newSkin) {
+                Platform.runLater(() -> initPaging());
+            }
+        });
+    }
+
+    private void initPaging() {
+        for (Node node : booksTable.lookupAll(".scroll-bar")) {
+            if (node instanceof ScrollBar && ((ScrollBar) node).getOrientation() == Orientation.VERTICAL) {
+                ScrollBar scrollBar = (ScrollBar) node;
+                scrollBar.valueProperty().addListener(new ChangeListener<Number>() {
+                    @Override
+                    public void changed(ObservableValue<? extends Number> observableValue, Number oldValue, Number newValue) {
+                        if (newValue.doubleValue() >= scrollBar.getMax()) {
+                            controller.loadNextBooksPage();
+                        }
+                    }
+                });
+            }
+        }
     }
 
     private void initMenus() {
@@ -242,7 +334,9 @@ public class DbView extends VBox {
         MenuItem addItem = new MenuItem("Add Book");
         MenuItem removeItem = new MenuItem("Remove Book");
         MenuItem reviewItem = new MenuItem("Review Book");
-        manageMenu.getItems().addAll(addItem, removeItem, reviewItem);
+        MenuItem importItem = new MenuItem("Import Books");
+        MenuItem exportItem = new MenuItem("Export Books");
+        manageMenu.getItems().addAll(addItem, removeItem, reviewItem, importItem, exportItem);
 
         menuBar = new MenuBar();
         menuBar.getMenus().addAll(fileMenu, manageMenu);
@@ -284,6 +378,20 @@ public class DbView extends VBox {
             }
         });
 
+        importItem.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                controller.handleImportBooksEvent(null, false);
+            }
+        });
+
+        exportItem.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                showExportFileChooser();
+            }
+        });
+
         loginUserItem.setOnAction(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent event) {
@@ -321,6 +429,42 @@ public class DbView extends VBox {
         }
     }
 
+    protected void showImportFileChooser() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Import Books");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Book feeds", "*.ndjson", "*.jsonl", "*.json", "*.csv", "*.gz"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File feed = fileChooser.showOpenDialog(getScene().getWindow());
+
+        if (feed != null) {
+            controller.handleImportBooksEvent(feed, true);
+        }
+    }
+
+    protected void showExportFileChooser() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export Books");
+        fileChooser.setInitialFileName("books.ndjson.gz");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Book feeds", "*.ndjson", "*.ndjson.gz", "*.csv", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("All files", "*.*"));
+        File target = fileChooser.showSaveDialog(getScene().getWindow());
+
+        if (target != null) {
+            controller.handleExportBooksEvent(target);
+        }
+    }
+
+    protected void showQueryDialog() {
+        QueryDialog queryDialog = new QueryDialog(controller);
+        Optional<BookQuery> result = queryDialog.showAndWait();
+
+        if (result.isPresent()) {
+            controller.onQuerySelected(result.get());
+        }
+    }
+
     protected void showRemoveBookDialog() {
         removeBookDialog = new RemoveBookDialog(controller, booksInTable);
         Optional<Book> result = removeBookDialog.showAndWait();
@@ -339,6 +483,11 @@ public class DbView extends VBox {
         }
     }
 
+    protected void showDisplayReviewsDialog(Book bookToShow, List<Review> reviews) {
+        displayReviewsDialog = new DisplayReviewsDialog(bookToShow, reviews);
+        displayReviewsDialog.showAndWait();
+    }
+
     protected void showLoginDialog() {
         loginDialog = new LoginDialog(controller);
         Optional<User> result = loginDialog.showAndWait();
@@ -433,10 +582,12 @@ public class DbView extends VBox {
         Platform.runLater(() -> searchButton.setPrefWidth(returnButton.getWidth()));
         reviewButton = new Button("Show Reviews");
         Button notRatedButton = new Button("Search Not Rated");
+        Button advancedButton = new Button("Advanced");
 
         buttonPane.add(searchButton, 0, 0);
         buttonPane.add(returnButton, 1, 0);
         buttonPane.add(reviewButton, 2, 0);
+        buttonPane.add(advancedButton, 3, 0);
 
         searchModeBox.setOnAction(new EventHandler<ActionEvent>() {
             @Override
@@ -475,6 +626,15 @@ public class DbView extends VBox {
                     searchField.setPromptText("(978/979)-XXXX-XXXXXX");
                     searchField.setPrefWidth(280.0);
                     bottomPane.requestFocus();
+                } else if (searchModeBox.getValue() == SearchMode.Keywords) {
+                    buttonPane.add(searchButton, 0, 0);
+                    buttonPane.add(returnButton, 1, 0);
+                    buttonPane.add(reviewButton, 2, 0);
+                    bottomPane.getChildren().addAll(searchModeBox, searchField, buttonPane);
+                    bottomPane.requestFocus();
+                    searchField.clear();
+                    searchField.setPromptText("Words in title or author...");
+                    searchField.setPrefWidth(280.0);
                 } else {
                     buttonPane.add(searchButton, 0, 0);
                     buttonPane.add(returnButton, 1, 0);
@@ -485,9 +645,37 @@ public class DbView extends VBox {
                     searchField.setPromptText("Search Title");
                     searchField.setPrefWidth(280.0);
                 }
+                if (searchModeBox.getValue() == SearchMode.Rating) {
+                    buttonPane.add(advancedButton, 2, 0);
+                } else {
+                    buttonPane.add(advancedButton, 3, 0);
+                }
             }
         });
 
+        // search as you type, once the typing pauses
+        typingPause = new PauseTransition(Duration.millis(TYPING_PAUSE_MILLIS));
+        typingPause.setOnFinished(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                SearchMode mode = searchModeBox.getValue();
+                if (mode == SearchMode.Author) {
+                    controller.onSearchTyped((searchField.getText().trim() + " " + authorNameField.getText().trim()).trim(), mode);
+                } else if (mode == SearchMode.Title || mode == SearchMode.ISBN) {
+                    controller.onSearchTyped(searchField.getText(), mode);
+                }
+            }
+        });
+
+        ChangeListener<String> typingListener = new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observableValue, String oldValue, String newValue) {
+                typingPause.playFromStart();
+            }
+        };
+        searchField.textProperty().addListener(typingListener);
+        authorNameField.textProperty().addListener(typingListener);
+
         searchButton.setOnAction(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent event) {
@@ -499,7 +687,7 @@ public class DbView extends VBox {
                 } else if (mode == SearchMode.Rating) {
                     controller.onSearchRatingSelected(minRatingField.getText(), maxRatingField.getText());
                 } else if (mode == SearchMode.Author) {
-                    searchFor = searchField.getText().trim() + authorNameField.getText().trim();
+                    searchFor = (searchField.getText().trim() + " " + authorNameField.getText().trim()).trim();
                     controller.onSearchSelected(searchFor, mode);
                 } else {
                     controller.onSearchSelected(searchFor, mode);
@@ -507,6 +695,13 @@ public class DbView extends VBox {
             }
         });
 
+        advancedButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent event) {
+                showQueryDialog();
+            }
+        });
+
         notRatedButton.setOnAction(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent event) {
@@ -526,8 +721,7 @@ public class DbView extends VBox {
             public void handle(ActionEvent event) {
                 if (booksTable.getSelectionModel().getSelectedItem() != null) {
                     if (controller.isBookReviewed(booksTable.getSelectionModel().getSelectedItem())) {
-                        displayReviewsDialog = new DisplayReviewsDialog(booksTable.getSelectionModel().getSelectedItem());
-                        displayReviewsDialog.showAndWait();
+                        controller.showReviews(booksTable.getSelectionModel().getSelectedItem());
                     }
 
                 } else {
@@ -5,6 +5,7 @@
  */
 package view;
 
+import java.util.List;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.ButtonBar;
@@ -15,6 +16,7 @@ import javafx.scene.control.ScrollPane;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import model.Book;
+import model.Review;
 
 /**
  *
@@ -24,9 +26,11 @@ public class DisplayReviewsDialog extends Dialog {
 
     private ButtonType buttonTypeOk;
     private final Book bookToShow;
+    private final List<Review> reviews;
 
-    public DisplayReviewsDialog(Book bookToShow) {
+    public DisplayReviewsDialog(Book bookToShow, List<Review> reviews) {
         this.bookToShow = bookToShow;
+        this.reviews = reviews;
         buildDialog();
     }
 
@@ -76,10 +80,10 @@ public class DisplayReviewsDialog extends Dialog {
 
         revBox.setPadding(new Insets(10, 10, 10, 10));
 
-        for (int i = 0; i < bookToShow.getReviews().size(); i++) {
-            String username = "User: "+bookToShow.getReviews().get(i).getUser().getUsername();
-            String dateAdded = "Date: "+bookToShow.getReviews().get(i).getDateAdded().toString();
-            String rating = "Rating: "+String.valueOf(bookToShow.getReviews().get(i).getbRating());
+        for (int i = 0; i < reviews.size(); i++) {
+            String username = "User: "+reviews.get(i).getUser().getUsername();
+            String dateAdded = "Date: "+reviews.get(i).getDateAdded().toString();
+            String rating = "Rating: "+String.valueOf(reviews.get(i).getbRating());
             
             String labelText = String.format("%-30s%-30s%-30s",username,dateAdded,rating);
             
@@ -88,7 +92,7 @@ public class DisplayReviewsDialog extends Dialog {
             Label usernameLabel = new Label(labelText);
             usernameLabel.setAlignment(Pos.CENTER_RIGHT);
 
-            Label label = new Label(bookToShow.getReviews().get(i).getRevString());
+            Label label = new Label(reviews.get(i).getRevString());
             label.setMaxWidth(600);
             label.setWrapText(true);
             
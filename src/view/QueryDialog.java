@@ -0,0 +1,202 @@
+package view;
+
+import javafx.application.Platform;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonBar;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.util.Callback;
+import model.BookQuery;
+import model.Genre;
+
+/**
+ * A dialog to search on several criteria at once. Fields left empty do not
+ * filter.
+ *
+ * @author Umar A & Rabi S
+ */
+public class QueryDialog extends Dialog<BookQuery> {
+
+    private static final String ANY = "Any";
+
+    private final Controller controller;
+
+    private ButtonType buttonTypeOk;
+    private ButtonType buttonTypeCancel;
+
+    private final TextField titleField = new TextField();
+    private final TextField authorField = new TextField();
+    private final TextField isbnField = new TextField();
+    private final TextField keywordsField = new TextField();
+    private final ComboBox<String> genreBox = new ComboBox<>();
+    private final TextField minRatingField = new TextField();
+    private final TextField maxRatingField = new TextField();
+    private final ComboBox<String> sortBox = new ComboBox<>();
+    private final CheckBox descendingBox = new CheckBox("Descending");
+    private final TextField limitField = new TextField();
+    private String invalidMsg;
+
+    public QueryDialog(Controller controller) {
+        this.controller = controller;
+        buildDialog();
+    }
+
+    private void buildDialog() {
+        GridPane dPane = new GridPane();
+        dPane.setAlignment(Pos.CENTER);
+        dPane.setHgap(10);
+        dPane.setVgap(5);
+        dPane.setPadding(new Insets(10, 10, 10, 10));
+
+        dPane.add(new Label("Title:"), 0, 0);
+        titleField.setPromptText("Start of a word...");
+        dPane.add(titleField, 1, 0);
+
+        dPane.add(new Label("Author:"), 0, 1);
+        authorField.setPromptText("Start of a name...");
+        dPane.add(authorField, 1, 1);
+
+        dPane.add(new Label("Isbn-13:"), 0, 2);
+        isbnField.setPromptText("(978/979)-XXXX-XXXXXX");
+        dPane.add(isbnField, 1, 2);
+
+        dPane.add(new Label("Keywords:"), 0, 3);
+        keywordsField.setPromptText("Words in title or author...");
+        dPane.add(keywordsField, 1, 3);
+
+        dPane.add(new Label("Genre:"), 0, 4);
+        genreBox.getItems().add(ANY);
+        for (Genre genre : Genre.values()) {
+            genreBox.getItems().add(genre.name());
+        }
+        genreBox.setValue(ANY);
+        genreBox.setMaxWidth(Double.MAX_VALUE);
+        dPane.add(genreBox, 1, 4);
+
+        dPane.add(new Label("Rating:"), 0, 5);
+        minRatingField.setPromptText("min 0.0");
+        maxRatingField.setPromptText("max 5.0");
+        GridPane ratingPane = new GridPane();
+        ratingPane.setHgap(5);
+        ratingPane.add(minRatingField, 0, 0);
+        ratingPane.add(maxRatingField, 1, 0);
+        dPane.add(ratingPane, 1, 5);
+
+        dPane.add(new Label("Sort by:"), 0, 6);
+        sortBox.getItems().add("None");
+        for (BookQuery.SortField field : BookQuery.SortField.values()) {
+            sortBox.getItems().add(field.name());
+        }
+        sortBox.setValue("None");
+        GridPane sortPane = new GridPane();
+        sortPane.setHgap(10);
+        sortPane.add(sortBox, 0, 0);
+        sortPane.add(descendingBox, 1, 0);
+        dPane.add(sortPane, 1, 6);
+
+        dPane.add(new Label("Max results:"), 0, 7);
+        limitField.setPromptText("all");
+        dPane.add(limitField, 1, 7);
+
+        this.setTitle("Advanced Search");
+        this.getDialogPane().setContent(dPane);
+
+        buttonTypeOk = new ButtonType("Search", ButtonBar.ButtonData.OK_DONE);
+        buttonTypeCancel = new ButtonType("Cancel", ButtonBar.ButtonData.CANCEL_CLOSE);
+
+        this.getDialogPane().getButtonTypes().addAll(buttonTypeOk, buttonTypeCancel);
+
+        this.setResultConverter(new Callback<ButtonType, BookQuery>() {
+            @Override
+            public BookQuery call(ButtonType b) {
+                BookQuery result = null;
+                if (b == buttonTypeOk) {
+                    if (isValidInput()) {
+                        result = buildQuery();
+                    }
+                }
+                return result;
+            }
+        });
+
+        Button okButton = (Button) this.getDialogPane().lookupButton(buttonTypeOk);
+        okButton.addEventFilter(ActionEvent.ACTION, new EventHandler() {
+            @Override
+            public void handle(Event event) {
+                if (!isValidInput()) {
+                    event.consume();
+                    controller.handleInvalidInput(invalidMsg);
+                }
+            }
+        });
+        Platform.runLater(() -> titleField.requestFocus());
+    }
+
+    private BookQuery buildQuery() {
+        BookQuery query = new BookQuery();
+        query.setTitle(titleField.getText());
+        query.setAuthor(authorField.getText());
+        query.setIsbn(isbnField.getText());
+        query.setKeywords(keywordsField.getText());
+        if (!ANY.equals(genreBox.getValue())) {
+            query.setGenre(Genre.valueOf(genreBox.getValue()));
+        }
+        query.setMinRating(parseRating(minRatingField.getText()));
+        query.setMaxRating(parseRating(maxRatingField.getText()));
+        if (!"None".equals(sortBox.getValue())) {
+            query.setSort(BookQuery.SortField.valueOf(sortBox.getValue()), descendingBox.isSelected());
+        }
+        if (!limitField.getText().trim().isEmpty()) {
+            query.setLimit(Integer.parseInt(limitField.getText().trim()));
+        }
+        return query;
+    }
+
+    private boolean isValidInput() {
+        boolean isValid = true;
+        invalidMsg = "";
+
+        Double min = null;
+        Double max = null;
+        try {
+            min = parseRating(minRatingField.getText());
+            max = parseRating(maxRatingField.getText());
+            if ((min != null && (min < 0.0 || min > 5.0)) || (max != null && (max < 0.0 || max > 5.0))
+                    || (min != null && max != null && min > max)) {
+                isValid = false;
+                invalidMsg += "Rating must be between 0.0 and 5.0, min before max\n";
+            }
+        } catch (NumberFormatException e) {
+            isValid = false;
+            invalidMsg += "Rating must be a number\n";
+        }
+
+        if (!limitField.getText().trim().isEmpty() && !limitField.getText().trim().matches("[1-9][0-9]{0,5}")) {
+            isValid = false;
+            invalidMsg += "Max results must be a whole number above 0\n";
+        }
+
+        if (isValid && buildQuery().isEmpty()) {
+            isValid = false;
+            invalidMsg += "Fill in at least one criterion\n";
+        }
+        return isValid;
+    }
+
+    private static Double parseRating(String text) {
+        if (text.trim().isEmpty()) {
+            return null;
+        }
+        return Double.parseDouble(text.trim().replace(",", "."));
+    }
+}
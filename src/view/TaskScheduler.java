@@ -0,0 +1,146 @@
+package view;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs the database calls of the controller on a small, bounded pool of
+ * named daemon threads instead of a new thread per call.
+ *
+ * Tasks submitted under the same key replace each other: a task that has not
+ * started yet is cancelled, and a task that is already running is told that
+ * it has been superseded so it can drop its result.
+ *
+ * A task submitted while the queue is full is not run. The caller is told by
+ * the return value, and the user by the rejection callback.
+ *
+ * @author Umar A & Rabi S
+ */
+public class TaskScheduler {
+
+    /**
+     * A task that can check if a newer task with the same key has been
+     * submitted since it was.
+     */
+    public interface SupersedableTask {
+
+        void run(BooleanSupplier isSuperseded);
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Runnable onRejected;
+    private final Map<String, Future<?>> latestTasks;
+    private final Map<String, Long> latestGenerations;
+    private long generation;
+
+    /**
+     * Create a scheduler with a fixed number of threads.
+     *
+     * @param nrOfThreads
+     * @param queueSize the most tasks waiting for a thread
+     * @param onRejected called on the submitting thread for each task that
+     * did not fit in the queue
+     */
+    public TaskScheduler(int nrOfThreads, int queueSize, Runnable onRejected) {
+        executor = new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue(queueSize), new DaemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        this.onRejected = onRejected;
+        latestTasks = new HashMap();
+        latestGenerations = new HashMap();
+        generation = 0;
+    }
+
+    /**
+     * Run a task on the pool.
+     *
+     * @param task
+     * @return false if the task was rejected and will not run
+     */
+    public boolean submit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected();
+            return false;
+        }
+    }
+
+    /**
+     * Run a task on the pool, superseding the previous task with the same
+     * key.
+     *
+     * @param key
+     * @param task
+     * @return false if the task was rejected and will not run, the previous
+     * task is superseded either way
+     */
+    public synchronized boolean submitLatest(String key, SupersedableTask task) {
+        Future<?> previous = latestTasks.get(key);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+
+        long taskGeneration = ++generation;
+        latestGenerations.put(key, taskGeneration);
+
+        BooleanSupplier isSuperseded = () -> isSuperseded(key, taskGeneration);
+        try {
+            latestTasks.put(key, executor.submit(() -> runReportingErrors(task, isSuperseded)));
+            return true;
+        } catch (RejectedExecutionException e) {
+            latestTasks.remove(key);
+            rejected();
+            return false;
+        }
+    }
+
+    /**
+     * Stop accepting tasks. Tasks already running are left to finish.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void rejected() {
+        // after a shutdown the tasks are dropped on purpose
+        if (!executor.isShutdown()) {
+            onRejected.run();
+        }
+    }
+
+    private void runReportingErrors(SupersedableTask task, BooleanSupplier isSuperseded) {
+        try {
+            task.run(isSuperseded);
+        } catch (RuntimeException e) {
+            // a Future would swallow the error, report it like a plain thread
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    private synchronized boolean isSuperseded(String key, long taskGeneration) {
+        return latestGenerations.get(key) != taskGeneration;
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNr = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "books-db-task-" + threadNr.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}